@@ -0,0 +1,70 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.repository.MemberReadModel;
+import com.changddao.querydsl.repository.MemberRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 나이 범위 + 팀 이름 조건 페이지 조회
+ * sql: 조건/페이지/count 모두 DB, indexed: 읽기 모델 비트맵으로 id 페이지만 구하고 DB 는 id 로 조회, memory: 전부 읽기 모델
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgeRangeBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"0", "1500"})
+    int page;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    MemberReadModel readModel;
+    MemberSearchCondition condition;
+    PageRequest pageRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(rows, "querydsl.search.read-model.enabled=true");
+        memberRepository = context.getBean(MemberRepository.class);
+        readModel = context.getBean(MemberReadModel.class);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(39);
+        pageRequest = PageRequest.of(page, 5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> sql() {
+        return memberRepository.searchPageComplex(condition, pageRequest);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> indexed() {
+        return memberRepository.searchPageIndexed(condition, pageRequest);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> memory() {
+        return readModel.searchPage(condition, pageRequest);
+    }
+}
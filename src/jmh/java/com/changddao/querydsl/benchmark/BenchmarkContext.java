@@ -0,0 +1,35 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.QueryDslApplication;
+import com.changddao.querydsl.service.MemberBulkInsertService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+
+/*
+ * 벤치마크마다 임베디드 H2 위에 애플리케이션 컨텍스트를 띄우고 rows 건의 회원을 적재한다.
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    public static ConfigurableApplicationContext start(int rows, String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QueryDslApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL",
+                        "spring.datasource.username=sa",
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.jpa.show-sql=false",
+                        "decorator.datasource.p6spy.enable-logging=false",
+                        "logging.level.root=warn"
+                )
+                .properties(properties)
+                .run();
+        context.getBean(MemberBulkInsertService.class).insertMembers(rows, 10_000, true);
+        return context;
+    }
+}
@@ -0,0 +1,67 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.repository.MemberRepository;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.changddao.querydsl.entity.QMember.member;
+
+/*
+ * offset 기반 페이징(searchSlice)과 keyset 기반 페이징(searchAfter)을 깊은 페이지에서 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeysetPagingBenchmark {
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"10000", "100000", "1000000"})
+    int offset;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    MemberSearchCondition condition;
+    Long lastMemberId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(offset + PAGE_SIZE);
+        memberRepository = context.getBean(MemberRepository.class);
+        condition = new MemberSearchCondition();
+
+        lastMemberId = new JPAQueryFactory(context.getBean(EntityManager.class))
+                .select(member.id)
+                .from(member)
+                .orderBy(member.id.asc())
+                .offset(offset - 1)
+                .limit(1)
+                .fetchOne();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Slice<MemberTeamDto> offsetPaging() {
+        return memberRepository.searchSlice(condition, PageRequest.of(offset / PAGE_SIZE, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> keysetPaging() {
+        return memberRepository.searchAfter(condition, lastMemberId, PAGE_SIZE);
+    }
+}
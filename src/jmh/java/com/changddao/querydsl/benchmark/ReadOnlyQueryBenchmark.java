@@ -0,0 +1,66 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.entity.Member;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+/*
+ * 엔티티 조회를 일반 트랜잭션 + 스냅샷/dirty check 로 할 때와 readOnly 트랜잭션 + 읽기 전용 힌트로 할 때 비교
+ * 힙 사용량은 -Pjmh.profilers=gc 로 같이 확인한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadOnlyQueryBenchmark {
+
+    @Param({"1000", "10000"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+    JPAQueryFactory queryFactory;
+    TransactionTemplate readWrite;
+    TransactionTemplate readOnly;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(rows);
+        queryFactory = new JPAQueryFactory(context.getBean(EntityManager.class));
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Member> managed() {
+        return readWrite.execute(status -> queryFactory
+                .selectFrom(member)
+                .fetch());
+    }
+
+    @Benchmark
+    public List<Member> readOnly() {
+        return readOnly.execute(status -> queryFactory
+                .selectFrom(member)
+                .setHint(HINT_READONLY, true)
+                .fetch());
+    }
+}
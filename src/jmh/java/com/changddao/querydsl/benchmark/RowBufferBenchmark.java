@@ -0,0 +1,103 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.dto.QMemberTeamDto;
+import com.changddao.querydsl.repository.MemberRepository;
+import com.changddao.querydsl.repository.MemberTeamRowBuffer;
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static com.changddao.querydsl.entity.QTeam.team;
+
+/*
+ * MemberTeamDto 컬럼(회원 + 팀 조인)을 네 가지 DTO 조회 방식과 MemberTeamRowBuffer 로 읽는 비교.
+ * 한 번 호출이 ROWS 건을 읽으므로 결과는 행 하나 기준이다.
+ * 행당 할당량은 gc 프로파일러의 gc.alloc.rate.norm 으로 본다. (./gradlew jmh -Pjmh.includes=RowBufferBenchmark -Pjmh.profilers=gc)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(RowBufferBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowBufferBenchmark {
+    static final int ROWS = 10_000;
+
+    ConfigurableApplicationContext context;
+    JPAQueryFactory queryFactory;
+    MemberRepository memberRepository;
+    MemberTeamRowBuffer buffer;
+    MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(ROWS);
+        queryFactory = new JPAQueryFactory(context.getBean(EntityManager.class));
+        memberRepository = context.getBean(MemberRepository.class);
+        buffer = new MemberTeamRowBuffer(1000);
+        condition = new MemberSearchCondition();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> setter() {
+        return queryFactory.select(Projections.bean(MemberTeamDto.class,
+                        member.id.as("memberId"), member.username, member.age, team.id.as("teamId"), team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> fields() {
+        return queryFactory.select(Projections.fields(MemberTeamDto.class,
+                        member.id.as("memberId"), member.username, member.age, team.id.as("teamId"), team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> constructor() {
+        return queryFactory.select(Projections.constructor(MemberTeamDto.class,
+                        member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> queryProjection() {
+        return queryFactory.select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .fetch();
+    }
+
+    @Benchmark
+    public long rowBuffer(Blackhole blackhole) {
+        return memberRepository.forEachBatch(condition, buffer, rows -> {
+            for (int i = 0; i < rows.size(); i++) {
+                blackhole.consume(rows.memberId(i));
+                blackhole.consume(rows.username(i));
+                blackhole.consume(rows.age(i));
+                blackhole.consume(rows.teamId(i));
+                blackhole.consume(rows.teamName(i));
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package com.changddao.querydsl.benchmark;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.dto.QMemberTeamDto;
+import com.changddao.querydsl.repository.MemberRepository;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static com.changddao.querydsl.entity.QTeam.team;
+
+/*
+ * username 앞부분/부분 일치를 LIKE 로 조회할 때와 username 색인으로 id 를 찾고 조회할 때 비교
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsernameSearchBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    JPAQueryFactory queryFactory;
+    MemberSearchCondition prefix;
+    MemberSearchCondition contains;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(rows);
+        memberRepository = context.getBean(MemberRepository.class);
+        queryFactory = new JPAQueryFactory(context.getBean(EntityManager.class));
+
+        prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("member12345");
+        contains = new MemberSearchCondition();
+        contains.setUsernameContains("23456");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> prefixLike() {
+        return like().where(member.username.startsWith(prefix.getUsernamePrefix())).fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> prefixIndex() {
+        return memberRepository.search(prefix);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> containsLike() {
+        return like().where(member.username.contains(contains.getUsernameContains())).fetch();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> containsIndex() {
+        return memberRepository.search(contains);
+    }
+
+    private JPAQuery<MemberTeamDto> like() {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team);
+    }
+}
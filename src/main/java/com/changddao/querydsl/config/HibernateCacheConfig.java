@@ -0,0 +1,66 @@
+package com.changddao.querydsl.config;
+
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.repository.TeamRepository;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Team 은 거의 바뀌지 않는 작은 테이블이라 2차 캐시(Caffeine JCache)에 올려둔다.
+ * 엔티티, members 컬렉션, 팀 이름 -> id 조회 쿼리 캐시 영역의 TTL/최대 크기를 설정한다.
+ * 회원 검색은 팀 이름을 조인하지 않고 이 엔티티 캐시에서 채운다. (MemberSearchQueryCache)
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    @Value("${querydsl.cache.team.ttl-seconds:600}")
+    private long teamTtlSeconds;
+
+    @Value("${querydsl.cache.team.max-size:1000}")
+    private long teamMaxSize;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        //컨텍스트마다 독립된 CacheManager 를 사용한다.
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+
+        cacheManager.createCache(Team.class.getName(), teamRegion());
+        cacheManager.createCache(Team.class.getName() + ".members", teamRegion());
+        cacheManager.createCache(TeamRepository.TEAM_IDS_REGION, teamRegion());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create");
+            //Member.setTeam 처럼 반대편만 바꿔도 캐시된 Team.members 를 비운다.
+            properties.put(AvailableSettings.AUTO_EVICT_COLLECTION_CACHE, true);
+        };
+    }
+
+    private CaffeineConfiguration<Object, Object> teamRegion() {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(teamTtlSeconds)));
+        configuration.setMaximumSize(OptionalLong.of(teamMaxSize));
+        return configuration;
+    }
+}
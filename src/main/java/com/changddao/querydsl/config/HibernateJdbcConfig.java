@@ -0,0 +1,32 @@
+package com.changddao.querydsl.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * insert/update 를 JDBC batch 로 묶어서 보낸다.
+ * MySQL 은 rewriteBatchedStatements=true 를 URL 에 같이 줘야 multi-row insert 로 바뀐다.
+ * 지연 로딩 프록시/컬렉션은 default_batch_fetch_size 만큼 in 절로 묶어서 초기화한다.
+ */
+@Configuration
+public class HibernateJdbcConfig {
+
+    @Value("${querydsl.jdbc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${querydsl.jpa.default-batch-fetch-size:100}")
+    private int defaultBatchFetchSize;
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateJdbcCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize);
+            properties.put(AvailableSettings.ORDER_INSERTS, true);
+            properties.put(AvailableSettings.ORDER_UPDATES, true);
+            properties.put(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, defaultBatchFetchSize);
+        };
+    }
+}
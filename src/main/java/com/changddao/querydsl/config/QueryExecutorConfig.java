@@ -0,0 +1,35 @@
+package com.changddao.querydsl.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+ * 조회 쿼리 전용 스레드 풀. 스레드 하나가 커넥션 하나를 잡으므로 기본 크기는 Hikari 풀 크기와 같게 둔다.
+ * 큐가 가득 차면 더 쌓지 않고 바로 거절한다. (요청 스레드가 커넥션을 기다리며 묶이지 않도록)
+ */
+@Configuration
+public class QueryExecutorConfig {
+
+    @Value("${querydsl.async.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int poolSize;
+
+    @Value("${querydsl.async.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Bean
+    public ThreadPoolTaskExecutor queryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("query-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -0,0 +1,38 @@
+package com.changddao.querydsl.controller;
+
+import com.changddao.querydsl.service.MemberBulkInsertService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/*
+ * 스테이징/부하 테스트용 대량 회원 적재.
+ * ex) --spring.profiles.active=bulk --querydsl.bulk.rows=1000000 --querydsl.bulk.multi-row=true
+ */
+@Slf4j
+@Profile("bulk")
+@Component
+@RequiredArgsConstructor
+public class BulkInitMember implements ApplicationRunner {
+    private final MemberBulkInsertService memberBulkInsertService;
+
+    @Value("${querydsl.bulk.rows:100000}")
+    private int rows;
+
+    @Value("${querydsl.bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${querydsl.bulk.multi-row:false}")
+    private boolean multiRow;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        MemberBulkInsertService.Report report = memberBulkInsertService.insertMembers(rows, chunkSize, multiRow);
+        log.info("bulk insert rows={} elapsed={}ms throughput={} rows/sec multiRow={}",
+                report.getRows(), report.getElapsedMillis(), String.format("%.1f", report.getRowsPerSecond()), multiRow);
+    }
+}
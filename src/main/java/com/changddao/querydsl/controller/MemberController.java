@@ -1,36 +1,177 @@
 package com.changddao.querydsl.controller;
 
 import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamCursorDto;
 import com.changddao.querydsl.dto.MemberTeamDto;
 import com.changddao.querydsl.repository.MemberJpaRepository;
+import com.changddao.querydsl.repository.MemberReadModel;
 import com.changddao.querydsl.repository.MemberRepository;
+import com.changddao.querydsl.service.MemberColumnarFormat;
+import com.changddao.querydsl.service.MemberExportService;
+import com.changddao.querydsl.service.MemberSearchService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
+    private static final MediaType COLUMNAR = MediaType.parseMediaType(MemberColumnarFormat.MEDIA_TYPE);
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberExportService memberExportService;
+    private final MemberSearchService memberSearchService;
+    private final MemberReadModel memberReadModel;
+    private final MemberResponseCache memberResponseCache;
 
+    @Value("${querydsl.search.batch.max-conditions:100}")
+    private int batchMaxConditions;
+
+    @Value("${querydsl.search.cursor.max-size:1000}")
+    private int cursorMaxSize;
+
+    //querydsl.search.read-model.enabled=true 면 v1, v3 은 DB 대신 메모리 읽기 모델에서 조회하고
+    //v2 는 읽기 모델에서 id 페이지만 구한 뒤 DB 에서 그 id 로 조회한다. (읽기 모델이 처음 다 읽히기 전에는 DB)
+    //querydsl.search.response-cache.enabled=true 면 v1~v3 응답은 MemberResponseCache 를 거친다. (ETag, 304)
     @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    public ResponseEntity<?> searchMemberV1(MemberSearchCondition condition, WebRequest request,
+                                            HttpServletResponse response) {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return memberResponseCache.respond("v1", condition, null, null, request, () -> {
+            if (memberReadModel.isReady()) {
+                return memberReadModel.search(condition);
+            }
+            return memberJpaRepository.search(condition);
+        });
+    }
+
+    /*
+     * Accept: application/x-member-columnar 면 JSON 대신 컬럼 형식으로 쓴다.
+     * JSON 과 같은 소스/순서로 읽고 같은 응답 캐시와 ETag 를 쓰므로 두 형식의 내용은 같다.
+     * 페이지 메타데이터가 있는 /v2, /v3 는 JSON 만 지원한다.
+     */
+    @GetMapping(value = "/v1/members", produces = MemberColumnarFormat.MEDIA_TYPE)
+    public ResponseEntity<?> searchMemberV1Columnar(MemberSearchCondition condition, WebRequest request,
+                                                    HttpServletResponse response) throws IOException {
+        //같은 URL 이 Accept 에 따라 다른 형식을 돌려주므로 공유 캐시가 형식을 섞지 않게 한다.
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return memberResponseCache.respond("v1", condition, null, null, request, COLUMNAR,
+                out -> memberExportService.exportColumnar(condition, out));
     }
 
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition,pageable);
+    public ResponseEntity<?> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                            @RequestParam(defaultValue = "true") boolean exactCount,
+                                            WebRequest request) {
+        return memberResponseCache.respond("v2", condition, pageable, exactCount, request, () -> {
+            if (memberReadModel.isReady()) {
+                return memberRepository.searchPageIndexed(condition, pageable);
+            }
+            //같은 조건으로 동시에 들어온 요청은 쿼리를 한 번만 실행한다.
+            return memberSearchService.searchPageComplex(condition, pageable, exactCount);
+        });
     }
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageSimple(condition,pageable);
+    public ResponseEntity<?> searchMemberV3(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
+        return memberResponseCache.respond("v3", condition, pageable, null, request, () -> {
+            if (memberReadModel.isReady()) {
+                return memberReadModel.searchPage(condition, pageable);
+            }
+            return memberRepository.searchPageSimple(condition,pageable);
+        });
+    }
+
+    //조건 목록을 한 번에 받아서 조건 순서대로 결과 목록을 돌려준다.
+    @PostMapping("/members/batch-search")
+    public List<List<MemberTeamDto>> batchSearchMembers(@RequestBody List<MemberSearchCondition> conditions) {
+        if (conditions.size() > batchMaxConditions) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "too many conditions (max " + batchMaxConditions + ")");
+        }
+        if (conditions.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "null condition");
+        }
+        return memberRepository.searchAll(conditions);
+    }
+
+    //조회는 queryExecutor 에서 실행하고 요청 스레드는 바로 반납한다.
+    @GetMapping("/v1/members/async")
+    public CompletableFuture<List<MemberTeamDto>> searchMemberV1Async(MemberSearchCondition condition) {
+        try {
+            return memberSearchService.search(condition);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "search capacity exceeded");
+        }
+    }
+
+    @GetMapping("/v2/members/async")
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberV2Async(MemberSearchCondition condition, Pageable pageable) {
+        try {
+            return memberSearchService.searchPage(condition, pageable);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "search capacity exceeded");
+        }
+    }
+
+    @GetMapping("/v2/members/slice")
+    public Slice<MemberTeamDto> searchMemberSlice(MemberSearchCondition condition, Pageable pageable) {
+        return memberRepository.searchSlice(condition, pageable);
+    }
+
+    @GetMapping("/v4/members")
+    public MemberTeamCursorDto searchMemberV4(MemberSearchCondition condition,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > cursorMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + cursorMaxSize);
+        }
+        List<MemberTeamDto> content = memberRepository.searchAfter(condition, decodeCursor(cursor), size);
+        String nextCursor = content.size() < size ? null : encodeCursor(content.get(content.size() - 1).getMemberId());
+        return new MemberTeamCursorDto(content, nextCursor);
+    }
+
+    @GetMapping("/v1/members/export")
+    public void exportMembers(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        memberExportService.export(condition, response.getOutputStream());
+    }
+
+    private String encodeCursor(Long memberId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(memberId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
     }
 
 
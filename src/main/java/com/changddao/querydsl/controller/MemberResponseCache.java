@@ -0,0 +1,145 @@
+package com.changddao.querydsl.controller;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.repository.MemberDataVersion;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+ * 같은 조건으로 반복되는 회원 검색 응답을 직렬화된 JSON 그대로 캐시한다.
+ * 키는 (엔드포인트, 정규화한 조건, 페이지, member/team 변경 번호) 라서 변경이 커밋되면 이전 응답은 더 이상 쓰이지 않고
+ * maxBytes 를 넘으면 Caffeine 이 응답 크기 기준으로 밀어낸다.
+ * ETag 는 변경 번호와 형식으로 만들고 If-None-Match 가 맞으면 조회/직렬화 없이 304 를 돌려준다.
+ * JSON 이 아닌 형식(MemberColumnarFormat 등)도 같은 키에 형식만 더해서 같은 방식으로 캐시한다.
+ * Accept 로 형식을 고르는 엔드포인트는 컨트롤러에서 Vary: Accept 를 붙인다.
+ */
+@Component
+public class MemberResponseCache implements MeterBinder {
+    private final ObjectMapper objectMapper;
+    private final MemberDataVersion dataVersion;
+    private final boolean enabled;
+    private final Cache<List<Object>, byte[]> responses;
+
+    public MemberResponseCache(ObjectMapper objectMapper, MemberDataVersion dataVersion,
+                               @Value("${querydsl.search.response-cache.enabled:false}") boolean enabled,
+                               @Value("${querydsl.search.response-cache.max-bytes:16777216}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.dataVersion = dataVersion;
+        this.enabled = enabled;
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((List<Object> key, byte[] body) -> body.length)
+                .recordStats()
+                .build();
+    }
+
+    /*
+     * 캐시를 끈 경우에는 loader 결과를 그대로 돌려준다.
+     * pageable 이 없는 엔드포인트는 null, 조건/페이지 외에 응답을 바꾸는 파라미터는 extra 로 넘긴다.
+     */
+    public ResponseEntity<?> respond(String endpoint, MemberSearchCondition condition, Pageable pageable, Object extra,
+                                     WebRequest request, Supplier<?> loader) {
+        if (!enabled) {
+            return ResponseEntity.ok(loader.get());
+        }
+        return cached(endpoint, condition, pageable, extra, request, MediaType.APPLICATION_JSON,
+                () -> serialize(loader.get()));
+    }
+
+    /*
+     * writer 가 contentType 형식으로 직접 쓰는 응답. 캐시를 끈 경우에는 버퍼 없이 응답 스트림에 바로 쓰고 null 을 돌려준다.
+     */
+    public ResponseEntity<?> respond(String endpoint, MemberSearchCondition condition, Pageable pageable, Object extra,
+                                     WebRequest request, MediaType contentType, BodyWriter writer) throws IOException {
+        if (!enabled) {
+            HttpServletResponse response = ((ServletWebRequest) request).getResponse();
+            response.setContentType(contentType.toString());
+            writer.writeTo(response.getOutputStream());
+            return null;
+        }
+        return cached(endpoint, condition, pageable, extra, request, contentType, () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writer.writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        });
+    }
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private ResponseEntity<?> cached(String endpoint, MemberSearchCondition condition, Pageable pageable, Object extra,
+                                     WebRequest request, MediaType contentType, Supplier<byte[]> loader) {
+        //조회 전에 변경 번호를 읽어야 조회 중에 커밋된 변경을 놓치지 않는다.
+        String version = dataVersion.current();
+        //같은 URL 의 다른 형식이 같은 ETag 를 갖지 않도록 형식을 붙인다.
+        String etag = "\"" + version + ":" + contentType.getSubtype() + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        byte[] body = responses.get(key(endpoint, condition, pageable, extra, contentType, version),
+                key -> loader.get());
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(contentType)
+                .body(body);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, responses, "querydsl.search.response");
+    }
+
+    //빈 문자열이나 공백뿐인 값은 조건이 없는 것과 같게 본다. (repository 의 hasText 조건과 같은 기준)
+    private List<Object> key(String endpoint, MemberSearchCondition condition, Pageable pageable, Object extra,
+                             MediaType contentType, String version) {
+        return Arrays.asList(endpoint, contentType, version,
+                normalize(condition.getUsername()), normalize(condition.getUsernamePrefix()),
+                normalize(condition.getUsernameContains()), normalize(condition.getTeamName()),
+                condition.getAgeGoe(), condition.getAgeLoe(),
+                pageable == null ? null : pageable.getOffset(),
+                pageable == null ? null : pageable.getPageSize(),
+                pageable == null ? null : pageable.getSort().toString(),
+                extra);
+    }
+
+    private String normalize(String value) {
+        return hasText(value) ? value : null;
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("failed to serialize member search response", e);
+        }
+    }
+}
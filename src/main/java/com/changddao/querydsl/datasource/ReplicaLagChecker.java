@@ -0,0 +1,89 @@
+package com.changddao.querydsl.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * replica 를 써도 되는지 판단한다. 요청 스레드에서 checkIntervalMillis 마다 한 번만 lagQuery 를 실행한다.
+ * lagQuery 는 지연 시간(초)을 돌려줘야 한다. MySQL 이면 SHOW REPLICA STATUS 를 그대로 쓰면 된다.
+ * (Seconds_Behind_Source / Seconds_Behind_Master 컬럼을 읽고, 없으면 첫 번째 컬럼을 읽는다)
+ * lagQuery 가 없으면 지연은 확인하지 않고 커넥션 실패 시에만 잠시 primary 로 돌린다.
+ */
+@Slf4j
+public class ReplicaLagChecker {
+    private final DataSource replica;
+    private final String lagQuery;
+    private final long maxLagSeconds;
+    private final long checkIntervalMillis;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile boolean available = true;
+    private volatile long nextCheckAt;
+
+    public ReplicaLagChecker(DataSource replica, String lagQuery, long maxLagSeconds, long checkIntervalMillis) {
+        this.replica = replica;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    public boolean isAvailable() {
+        long now = System.currentTimeMillis();
+        if (now >= nextCheckAt && checking.compareAndSet(false, true)) {
+            try {
+                available = check();
+                nextCheckAt = now + checkIntervalMillis;
+            } finally {
+                checking.set(false);
+            }
+        }
+        return available;
+    }
+
+    //다음 확인 시점까지 primary 를 사용한다.
+    public void markUnavailable() {
+        available = false;
+        nextCheckAt = System.currentTimeMillis() + checkIntervalMillis;
+    }
+
+    private boolean check() {
+        if (!StringUtils.hasText(lagQuery)) {
+            return true;
+        }
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(lagQuery)) {
+            if (!rs.next()) {
+                log.warn("replica lag query returned no rows, using primary");
+                return false;
+            }
+            long lag = rs.getLong(lagColumn(rs.getMetaData()));
+            if (rs.wasNull() || lag > maxLagSeconds) {
+                log.warn("replica lag {}s exceeds {}s, using primary", rs.wasNull() ? "unknown" : lag, maxLagSeconds);
+                return false;
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("replica lag check failed, using primary: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private int lagColumn(ResultSetMetaData metaData) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String label = metaData.getColumnLabel(i);
+            if ("Seconds_Behind_Source".equalsIgnoreCase(label) || "Seconds_Behind_Master".equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,83 @@
+package com.changddao.querydsl.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/*
+ * readOnly 트랜잭션은 replica 로, 나머지는 primary 로 보낸다.
+ * replica 가 지연되었거나 커넥션을 얻지 못하면 primary 로 대신 보낸다.
+ * JpaTransactionManager 는 readOnly 여부를 동기화 매니저에 세팅하기 전에 커넥션을 얻으므로
+ * ReplicationRoutingTransactionManager 가 트랜잭션 시작 동안 readOnly 여부를 넘겨준다.
+ */
+@Slf4j
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> beginReadOnly = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaLagChecker lagChecker;
+
+    public ReplicationRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagChecker lagChecker) {
+        this.primary = primary;
+        this.replica = replica;
+        this.lagChecker = lagChecker;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = Boolean.TRUE.equals(beginReadOnly.get())
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (readOnly && lagChecker.isAvailable()) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+
+    static void setBeginReadOnly(boolean readOnly) {
+        beginReadOnly.set(readOnly);
+    }
+
+    static void clearBeginReadOnly() {
+        beginReadOnly.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        if (target != replica) {
+            return target.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            log.warn("replica connection failed, falling back to primary: {}", e.getMessage());
+            lagChecker.markUnavailable();
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeQuietly(replica);
+        closeQuietly(primary);
+    }
+
+    private void closeQuietly(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+}
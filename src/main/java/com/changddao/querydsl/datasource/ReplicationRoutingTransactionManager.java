@@ -0,0 +1,20 @@
+package com.changddao.querydsl.datasource;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/*
+ * 트랜잭션을 시작하면서 커넥션을 얻는 동안 readOnly 여부를 라우팅 DataSource 에 알려준다.
+ */
+public class ReplicationRoutingTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ReplicationRoutingDataSource.setBeginReadOnly(definition.isReadOnly());
+        try {
+            super.doBegin(transaction, definition);
+        } finally {
+            ReplicationRoutingDataSource.clearBeginReadOnly();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.changddao.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+/*
+ * querydsl.datasource.replica.enabled=true 일 때만 primary/replica 라우팅 DataSource 를 등록한다.
+ * primary 는 spring.datasource.* 를, replica 는 querydsl.datasource.replica.* 를 사용한다.
+ * 풀 설정은 둘 다 spring.datasource.hikari.* 를 따르고 replica 는 querydsl.datasource.replica.hikari.* 로 덮어쓸 수 있다.
+ * 두 커넥션 풀은 빈으로 등록하지 않고 라우팅 DataSource 가 닫는다. (p6spy 가 한 번만 감싸도록)
+ * 트랜잭션 매니저도 readOnly 여부를 라우팅에 넘겨주는 것으로 바꾼다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "querydsl.datasource.replica.enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+
+    @Value("${querydsl.datasource.replica.url}")
+    private String replicaUrl;
+
+    @Value("${querydsl.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${querydsl.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${querydsl.datasource.replica.max-lag-seconds:5}")
+    private long maxLagSeconds;
+
+    @Value("${querydsl.datasource.replica.lag-query:}")
+    private String lagQuery;
+
+    @Value("${querydsl.datasource.replica.check-interval-ms:1000}")
+    private long checkIntervalMillis;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment) {
+        //풀이 빈이 아니므로 @ConfigurationProperties 대신 Binder 로 직접 바인딩한다. (Boot 의 DataSourceConfiguration.Hikari 와 같은 설정)
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+        binder.bind("querydsl.datasource.replica.hikari", Bindable.ofInstance(replica));
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+
+        ReplicaLagChecker lagChecker = new ReplicaLagChecker(replica, lagQuery, maxLagSeconds, checkIntervalMillis);
+        return new ReplicationRoutingDataSource(primary, replica, lagChecker);
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        ReplicationRoutingTransactionManager transactionManager = new ReplicationRoutingTransactionManager();
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+}
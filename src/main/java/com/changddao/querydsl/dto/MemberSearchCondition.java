@@ -5,6 +5,9 @@ import lombok.Data;
 @Data
 public class MemberSearchCondition {
     private String username;
+    //username 앞부분 일치 / 부분 일치 (username 색인으로 찾는다)
+    private String usernamePrefix;
+    private String usernameContains;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
@@ -0,0 +1,16 @@
+package com.changddao.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MemberTeamCursorDto {
+    private List<MemberTeamDto> content;
+    private String nextCursor;
+
+    public MemberTeamCursorDto(List<MemberTeamDto> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -10,6 +10,9 @@ public class MemberTeamDto {
     private int age;
     private Long teamId;
     private String teamName;
+
+    public MemberTeamDto() {
+    }
     @QueryProjection
     public MemberTeamDto(Long memberId, String username, int age, Long teamId, String teamName) {
         this.memberId = memberId;
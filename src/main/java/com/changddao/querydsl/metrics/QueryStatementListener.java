@@ -0,0 +1,60 @@
+package com.changddao.querydsl.metrics;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * p6spy 가 가로챈 SQL 실행을 스레드별로 세고, 실행 시간이 기준을 넘으면 바인딩 값이 채워진 SQL 을 남긴다.
+ */
+@Slf4j
+@Component
+public class QueryStatementListener extends SimpleJdbcEventListener implements SmartInitializingSingleton {
+    private final ThreadLocal<long[]> statementCount = ThreadLocal.withInitial(() -> new long[1]);
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private volatile Timer sqlTimer;
+
+    @Value("${querydsl.metrics.slow-sql-ms:200}")
+    private long slowSqlMillis;
+
+    //DataSource 를 감싸는 시점에 리스너가 필요하므로 MeterRegistry 는 빈 초기화가 끝난 뒤에 가져온다.
+    public QueryStatementListener(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        statementCount.get()[0]++;
+        Timer timer = sqlTimer;
+        if (timer != null) {
+            timer.record(timeElapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        if (TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos) >= slowSqlMillis) {
+            log.warn("slow sql {}ms: {}", TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos),
+                    statementInformation.getSqlWithValues());
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        sqlTimer = Timer.builder("querydsl.sql")
+                .description("JDBC statement execution time")
+                .register(meterRegistry.getObject());
+    }
+
+    /*
+     * 현재 스레드에서 지금까지 실행된 SQL 수. 호출 전후 값의 차이로 한 번의 호출이 날린 SQL 수를 구한다.
+     */
+    public long getStatementCount() {
+        return statementCount.get()[0];
+    }
+}
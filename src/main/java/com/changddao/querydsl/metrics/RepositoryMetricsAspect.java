@@ -0,0 +1,98 @@
+package com.changddao.querydsl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 레포지토리 메서드별 실행 시간, 반환 건수, 실행된 SQL 수(N+1 확인용)를 기록한다.
+ * /actuator/metrics/querydsl.repository.calls?tag=method:search 처럼 조회할 수 있다.
+ * querydsl.metrics.statement-limit 를 주면 한 번의 호출이 그보다 많은 SQL 을 날릴 때 예외를 던진다. (테스트용)
+ */
+@Slf4j
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+    private final MeterRegistry meterRegistry;
+    private final QueryStatementListener statementListener;
+
+    @Value("${querydsl.metrics.slow-call-ms:500}")
+    private long slowCallMillis;
+
+    @Value("${querydsl.metrics.statement-limit:-1}")
+    private long statementLimit;
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry, QueryStatementListener statementListener) {
+        this.meterRegistry = meterRegistry;
+        this.statementListener = statementListener;
+    }
+
+    @Around("execution(public * com.changddao.querydsl.repository.MemberJpaRepository.*(..))" +
+            " || execution(public * com.changddao.querydsl.repository.MemberRepositoryImpl.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = joinPoint.getSignature().getDeclaringType().getSimpleName();
+        String method = joinPoint.getSignature().getName();
+        long statementsBefore = statementListener.getStatementCount();
+        long start = System.nanoTime();
+        String outcome = "success";
+        Object result = null;
+        try {
+            result = joinPoint.proceed();
+            long statements = statementListener.getStatementCount() - statementsBefore;
+            if (statementLimit >= 0 && statements > statementLimit) {
+                throw new StatementLimitExceededException(String.format("%s.%s executed %d statements (limit %d)",
+                        repository, method, statements, statementLimit));
+            }
+            return result;
+        } catch (Throwable e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long statements = statementListener.getStatementCount() - statementsBefore;
+
+            Timer.builder("querydsl.repository.calls")
+                    .tags("repository", repository, "method", method, "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("querydsl.repository.statements")
+                    .tags("repository", repository, "method", method)
+                    .register(meterRegistry)
+                    .record(statements);
+            long rows = rows(result);
+            if (rows >= 0) {
+                DistributionSummary.builder("querydsl.repository.rows")
+                        .tags("repository", repository, "method", method)
+                        .register(meterRegistry)
+                        .record(rows);
+            }
+
+            if (TimeUnit.NANOSECONDS.toMillis(elapsed) >= slowCallMillis) {
+                log.warn("slow repository call {}.{} {}ms statements={} args={}", repository, method,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), statements, Arrays.toString(joinPoint.getArgs()));
+            }
+        }
+    }
+
+    private long rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,10 @@
+package com.changddao.querydsl.metrics;
+
+/*
+ * 한 번의 레포지토리 호출이 querydsl.metrics.statement-limit 보다 많은 SQL 을 실행했을 때 던진다.
+ */
+public class StatementLimitExceededException extends RuntimeException {
+    public StatementLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package com.changddao.querydsl.repository;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/*
+ * 전체 건수가 정확하지 않을 수 있는 페이지. totalExact 가 false 면 totalElements 는 추정치다.
+ */
+public class EstimatedPage<T> extends PageImpl<T> {
+    private final boolean totalExact;
+
+    public EstimatedPage(List<T> content, Pageable pageable, long total, boolean totalExact) {
+        super(content, pageable, total);
+        this.totalExact = totalExact;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+}
@@ -0,0 +1,29 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.entity.Member;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static com.changddao.querydsl.entity.QTeam.team;
+
+/*
+ * Member 엔티티 조회 시 같이 읽어 올 연관관계.
+ * 조회 후 member.getTeam() 을 사용할 거라면 WITH_TEAM 으로 페치 조인해서 N+1 을 막는다.
+ */
+public enum FetchPlan {
+    DEFAULT {
+        @Override
+        JPAQuery<Member> apply(JPAQuery<Member> query) {
+            return query;
+        }
+    },
+    WITH_TEAM {
+        @Override
+        JPAQuery<Member> apply(JPAQuery<Member> query) {
+            //ManyToOne 이라 row 가 늘어나지 않으므로 distinct 없이 페치 조인한다.
+            return query.leftJoin(member.team, team).fetchJoin();
+        }
+    };
+
+    abstract JPAQuery<Member> apply(JPAQuery<Member> query);
+}
@@ -0,0 +1,103 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+ * 페이지 번호를 그리기 위한 대략적인 전체 건수.
+ * 조건이 없으면 테이블 통계(statsQuery)를 읽고, 조건이 있거나 통계를 못 읽으면
+ * 조건별로 정확한 count 를 한 번 구해서 TTL 동안 재사용한다.
+ */
+@Slf4j
+@Component
+public class MemberCountEstimator {
+    private final MemberSearchQueryCache queryCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final String statsQuery;
+    private final Cache<List<Object>, Long> counts;
+    private volatile boolean statsAvailable;
+
+    public MemberCountEstimator(MemberSearchQueryCache queryCache, JdbcTemplate jdbcTemplate,
+                                @Value("${querydsl.count.stats-query:select table_rows from information_schema.tables where table_schema = database() and table_name = 'member'}") String statsQuery,
+                                @Value("${querydsl.count.ttl-seconds:60}") long ttlSeconds,
+                                @Value("${querydsl.count.max-size:10000}") long maxSize) {
+        this.queryCache = queryCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.statsQuery = statsQuery;
+        this.statsAvailable = hasText(statsQuery);
+        this.counts = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    public long estimate(EntityManager em, MemberSearchCondition condition) {
+        if (isUnfiltered(condition)) {
+            Long rows = tableRows();
+            if (rows != null) {
+                return rows;
+            }
+        }
+        return counts.get(key(condition), key -> queryCache.count(em, condition));
+    }
+
+    /*
+     * 기다리지 않고 바로 줄 수 있는 추정치. (테이블 통계나 캐시된 count) 없으면 count 를 실행하지 않고 null 을 돌려준다.
+     */
+    public Long cachedEstimate(MemberSearchCondition condition) {
+        if (isUnfiltered(condition)) {
+            Long rows = tableRows();
+            if (rows != null) {
+                return rows;
+            }
+        }
+        return counts.getIfPresent(key(condition));
+    }
+
+    //다른 경로에서 구한 정확한 count 를 다음 추정에 쓰도록 남긴다.
+    public void record(MemberSearchCondition condition, long count) {
+        counts.put(key(condition), count);
+    }
+
+    private Long tableRows() {
+        if (!statsAvailable) {
+            return null;
+        }
+        try {
+            return jdbcTemplate.queryForList(statsQuery, Long.class).stream()
+                    .filter(rows -> rows != null && rows > 0)
+                    .findFirst()
+                    .orElse(null);
+        } catch (DataAccessException e) {
+            //통계를 지원하지 않는 DB 면 다시 시도하지 않는다.
+            log.info("table statistics unavailable, using cached counts: {}", e.getMessage());
+            statsAvailable = false;
+            return null;
+        }
+    }
+
+    private boolean isUnfiltered(MemberSearchCondition condition) {
+        return !hasText(condition.getUsername()) && !hasText(condition.getTeamName())
+                && !hasText(condition.getUsernamePrefix()) && !hasText(condition.getUsernameContains())
+                && condition.getAgeGoe() == null && condition.getAgeLoe() == null;
+    }
+
+    //MemberSearchCondition 은 변경 가능하므로 값만 복사해서 키로 쓴다.
+    private List<Object> key(MemberSearchCondition condition) {
+        return Arrays.asList(condition.getUsername(), condition.getUsernamePrefix(), condition.getUsernameContains(),
+                condition.getTeamName(), condition.getAgeGoe(), condition.getAgeLoe());
+    }
+}
@@ -0,0 +1,108 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * member/team 테이블별 변경 번호. 커밋된 변경마다 1씩 올라가며 응답 캐시 키와 ETag 에 쓴다.
+ * 번호는 프로세스마다 0 부터 다시 시작하므로 앞에 시작할 때 정한 epoch 를 붙여서
+ * 재시작한 뒤나 다른 인스턴스의 같은 번호가 같은 값으로 보이지 않게 한다.
+ * 이 애플리케이션을 거친 변경만 센다. JPQL 벌크 연산이나 JDBC 로 바꾼 경우에는 호출하는 쪽에서 memberChangedAfterCommit 을 불러줘야 한다.
+ */
+@Component
+public class MemberDataVersion implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+    private final EntityManagerFactory emf;
+    private final String epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong memberVersion = new AtomicLong();
+    private final AtomicLong teamVersion = new AtomicLong();
+
+    public MemberDataVersion(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    //"epoch:member 변경 번호-team 변경 번호"
+    public String current() {
+        return epoch + ":" + memberVersion.get() + "-" + teamVersion.get();
+    }
+
+    public void memberChangedAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            memberVersion.incrementAndGet();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                memberVersion.incrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass()) || Team.class.equals(persister.getMappedClass());
+    }
+
+    private void changed(Object entity) {
+        if (entity instanceof Member) {
+            memberVersion.incrementAndGet();
+        } else if (entity instanceof Team) {
+            teamVersion.incrementAndGet();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
@@ -18,17 +19,27 @@ import java.util.Optional;
 
 import static com.changddao.querydsl.entity.QMember.*;
 import static com.changddao.querydsl.entity.QTeam.*;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 import static org.springframework.util.StringUtils.*;
 
+/*
+ * 조회 메서드는 readOnly 트랜잭션으로 실행한다. (새 트랜잭션이면 flush 를 하지 않는다)
+ * 엔티티를 돌려주는 Querydsl 조회(*_Querydsl)는 읽기 전용 힌트를 줘서 스냅샷을 만들지 않는다.
+ * 수정할 엔티티는 findById 나 JPQL 조회(findAll, findByUsername)로 가져온다.
+ */
 @Repository
+@Transactional(readOnly = true)
 public class MemberJpaRepository {
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchQueryCache queryCache;
 
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em, MemberSearchQueryCache queryCache) {
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.queryCache = queryCache;
     }
+    @Transactional
     public void save(Member member) {
         em.persist(member);
     }
@@ -43,8 +54,12 @@ public class MemberJpaRepository {
     }
 
     public List<Member> findAll_Querydsl() {
-        return queryFactory
-                .selectFrom(member)
+        return findAll_Querydsl(FetchPlan.DEFAULT);
+    }
+
+    public List<Member> findAll_Querydsl(FetchPlan fetchPlan) {
+        return fetchPlan.apply(queryFactory.selectFrom(member))
+                .setHint(HINT_READONLY, true)
                 .fetch();
     }
     public List<Member> findByUsername(String username) {
@@ -53,8 +68,13 @@ public class MemberJpaRepository {
                 .getResultList();
     }
     public List<Member> findByUsername_Querydsl(String username) {
-       return queryFactory.selectFrom(member)
+        return findByUsername_Querydsl(username, FetchPlan.DEFAULT);
+    }
+
+    public List<Member> findByUsername_Querydsl(String username, FetchPlan fetchPlan) {
+       return fetchPlan.apply(queryFactory.selectFrom(member))
                 .where(member.username.eq(username))
+                .setHint(HINT_READONLY, true)
                 .fetch();
     }
 
@@ -91,41 +111,7 @@ public class MemberJpaRepository {
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
-                
-    }
-
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
-    }
-
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe!=null?member.age.goe(ageGoe):null;
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe!=null?member.age.loe(ageLoe):null;
-
+        return queryCache.fetch(em, condition);
     }
 
 
@@ -0,0 +1,701 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+ * DB 를 거치지 않고 MemberSearchCondition 검색/페이징에 답하는 메모리 읽기 모델.
+ * 회원은 컬럼별 배열(id, age, team id, username 사전 코드)로 두고 팀 이름은 team id -> 사전 코드로 따로 둔다.
+ * 기동 시 DB 에서 한 번 읽고, 이후에는 커밋된 Member/Team 변경을 Hibernate 이벤트로 반영한다.
+ * JPQL 벌크 연산이나 JDBC 로 바꾼 경우에는 호출하는 쪽에서 rebuildAfterCommit 을 불러줘야 한다.
+ * 결과는 member.id 순서다. username 일치/앞부분 일치/부분 일치는 기본은 대소문자를 구분하고,
+ * DB collation 이 구분하지 않으면(MySQL 의 *_ci 등) querydsl.search.username-ignore-case=true 로 DB 와 같은 결과를 내게 한다.
+ *
+ * 나이별/팀별로 슬롯 비트맵을 유지해서 나이 범위 + 팀 조건은 비트맵 OR/AND 로 먼저 후보를 줄인다.
+ * findIds 는 그 결과의 member id 페이지만 돌려주고 내용은 DB 에서 id 로 조회할 때 쓴다.
+ * 조회하는 쪽은 isEnabled 대신 isReady 를 보고, 첫 load 전(ApplicationReadyEvent 전)에는 DB 에서 조회해야 한다.
+ */
+@Slf4j
+@Component
+public class MemberReadModel implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+    private static final long NO_TEAM = Long.MIN_VALUE;
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final boolean usernameIgnoreCase;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //rebuild 는 한 번에 하나만 돈다.
+    private final Object rebuildLock = new Object();
+
+    private Store store = new Store(16);
+    //rebuild 중에 들어온 변경. 새로 읽은 Store 에 다시 반영한다. (진행 중인 rebuild 의 목록)
+    private List<Consumer<Store>> pending;
+    //첫 load 가 끝나기 전이나 rebuild 가 실패한 뒤에는 false. 이때 호출하는 쪽은 DB 에서 조회한다.
+    private volatile boolean ready;
+
+    public MemberReadModel(EntityManagerFactory emf,
+                           @Value("${querydsl.search.read-model.enabled:false}") boolean enabled,
+                           @Value("${querydsl.search.username-ignore-case:false}") boolean usernameIgnoreCase) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.usernameIgnoreCase = usernameIgnoreCase;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        if (!enabled) {
+            return;
+        }
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //켜져 있고 DB 에서 다 읽은 상태인지. false 면 search/findIds 등은 빈 Store 나 오래된 Store 를 보게 된다.
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.nanoTime();
+            List<Consumer<Store>> changes = new ArrayList<>();
+            lock.writeLock().lock();
+            try {
+                pending = changes;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Store fresh;
+            try {
+                fresh = read();
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    pending = null;
+                    //일부 변경(벌크 연산 등)이 빠졌을 수 있으므로 다음 rebuild 가 끝날 때까지 DB 로 돌린다.
+                    ready = false;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                changes.forEach(change -> change.accept(fresh));
+                pending = null;
+                store = fresh;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("member read model loaded: {} members in {}ms", fresh.slots.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /*
+     * 현재 트랜잭션이 커밋된 뒤에 DB 에서 다시 읽는다. 트랜잭션 밖이면 바로 읽는다.
+     */
+    public void rebuildAfterCommit() {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rebuild();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                //이미 커밋된 쓰기이므로 호출한 쪽에 예외를 넘기지 않는다. (실패하면 isReady 가 false 가 된다)
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("member read model rebuild failed", e);
+                }
+            }
+        });
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        lock.readLock().lock();
+        try {
+            int[] matches = store.match(condition, usernameIgnoreCase);
+            return store.toDtos(matches, 0, matches.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            int[] matches = store.match(condition, usernameIgnoreCase);
+            int from = (int) Math.min(pageable.getOffset(), matches.length);
+            int to = Math.min(from + pageable.getPageSize(), matches.length);
+            return new PageImpl<>(store.toDtos(matches, from, to), pageable, matches.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * 조건에 맞는 member id 페이지와 전체 건수. (member.id 순서)
+     */
+    public Page<Long> findIds(MemberSearchCondition condition, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            int[] matches = store.match(condition, usernameIgnoreCase);
+            int from = (int) Math.min(pageable.getOffset(), matches.length);
+            int to = Math.min(from + pageable.getPageSize(), matches.length);
+            List<Long> ids = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                ids.add(store.ids[matches[i]]);
+            }
+            return new PageImpl<>(ids, pageable, matches.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //지워지거나 바뀐 username 이 사전에 쌓이지 않는지 테스트에서 본다.
+    int usernameDictionarySize() {
+        lock.readLock().lock();
+        try {
+            return store.usernameDictionary.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long count(MemberSearchCondition condition) {
+        lock.readLock().lock();
+        try {
+            return store.match(condition, usernameIgnoreCase).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        upsert(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        upsert(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        long id = (Long) event.getId();
+        if (entity instanceof Member) {
+            apply(s -> s.removeMember(id));
+        } else if (entity instanceof Team) {
+            apply(s -> s.removeTeam(id));
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass()) || Team.class.equals(persister.getMappedClass());
+    }
+
+    private void upsert(Object entity) {
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            Team team = member.getTeam();
+            Long teamId = null;
+            String teamName = null;
+            if (team instanceof HibernateProxy) {
+                //초기화되지 않은 프록시는 건드리지 않고 id 만 쓴다. 팀 이름은 Team 쪽 이벤트나 로딩으로 채워진다.
+                teamId = (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+            } else if (team != null) {
+                teamId = team.getId();
+                teamName = team.getName();
+            }
+            long id = member.getId();
+            String username = member.getUsername();
+            int age = member.getAge();
+            long memberTeamId = teamId == null ? NO_TEAM : teamId;
+            String name = teamName;
+            apply(s -> {
+                if (name != null) {
+                    s.putTeam(memberTeamId, name);
+                }
+                s.putMember(id, username, age, memberTeamId);
+            });
+        } else if (entity instanceof Team) {
+            Team team = (Team) entity;
+            long id = team.getId();
+            String name = team.getName();
+            apply(s -> s.putTeam(id, name));
+        }
+    }
+
+    private void apply(Consumer<Store> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(store);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Store read() {
+        EntityManager readEm = emf.createEntityManager();
+        try {
+            Store fresh = new Store(1024);
+            try (Stream<Object[]> teams = readEm.createQuery("select t.id, t.name from Team t", Object[].class)
+                    .setHint(HINT_READONLY, true)
+                    .getResultStream()) {
+                teams.forEach(row -> fresh.putTeam((Long) row[0], (String) row[1]));
+            }
+            try (Stream<Object[]> members = readEm.createQuery(
+                            "select m.id, m.username, m.age, m.team.id from Member m order by m.id", Object[].class)
+                    .setHint(HINT_FETCH_SIZE, 1000)
+                    .setHint(HINT_READONLY, true)
+                    .getResultStream()) {
+                members.forEach(row -> fresh.putMember((Long) row[0], (String) row[1], (Integer) row[2],
+                        row[3] == null ? NO_TEAM : (Long) row[3]));
+            }
+            return fresh;
+        } finally {
+            readEm.close();
+        }
+    }
+
+    /*
+     * 문자열 사전. 같은 값은 같은 int 코드로 저장한다. (null 은 -1)
+     */
+    private static class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            return codes.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        int find(String value) {
+            return codes.getOrDefault(value, -1);
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /*
+     * username 사전. 소문자 값을 정렬해서(앞부분 일치, 대소문자 무시 일치) 3-gram 으로(부분 일치) 색인해 두고
+     * 대소문자를 구분할 때는 그 후보를 원래 값으로 한 번 더 거른다.
+     * 검색할 때 사전 전체를 훑지 않는다. 찾은 코드는 값이 같은 코드 전부이고, 살아 있는 회원인지는 슬롯 쪽에서 본다.
+     */
+    private static class UsernameDictionary extends Dictionary {
+        private static final int GRAM = 3;
+
+        private final List<String> lowered = new ArrayList<>();
+        private final TreeMap<String, BitSet> byLowered = new TreeMap<>();
+        private final Map<String, BitSet> grams = new HashMap<>();
+
+        @Override
+        int encode(String value) {
+            int size = size();
+            int code = super.encode(value);
+            if (code == size) {
+                String lower = value.toLowerCase(Locale.ROOT);
+                lowered.add(lower);
+                byLowered.computeIfAbsent(lower, key -> new BitSet()).set(code);
+                for (int i = 0; i + GRAM <= lower.length(); i++) {
+                    grams.computeIfAbsent(lower.substring(i, i + GRAM), key -> new BitSet()).set(code);
+                }
+            }
+            return code;
+        }
+
+        //조건이 없으면 null
+        BitSet match(String username, String prefix, String contains, boolean ignoreCase) {
+            BitSet codes = null;
+            if (hasText(username)) {
+                codes = new BitSet();
+                if (ignoreCase) {
+                    BitSet same = byLowered.get(username.toLowerCase(Locale.ROOT));
+                    if (same != null) {
+                        codes.or(same);
+                    }
+                } else if (find(username) >= 0) {
+                    codes.set(find(username));
+                }
+            }
+            if (hasText(prefix)) {
+                String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+                BitSet prefixed = new BitSet();
+                for (Map.Entry<String, BitSet> entry : byLowered.tailMap(lowerPrefix, true).entrySet()) {
+                    if (!entry.getKey().startsWith(lowerPrefix)) {
+                        break;
+                    }
+                    prefixed.or(entry.getValue());
+                }
+                if (!ignoreCase) {
+                    //소문자로 찾은 후보에서 대소문자까지 같은 것만 남긴다.
+                    prefixed = retain(prefixed, value -> value.startsWith(prefix));
+                }
+                codes = and(codes, prefixed);
+            }
+            if (hasText(contains)) {
+                BitSet containing = containing(contains.toLowerCase(Locale.ROOT));
+                if (!ignoreCase) {
+                    containing = retain(containing, value -> value.contains(contains));
+                }
+                codes = and(codes, containing);
+            }
+            return codes;
+        }
+
+        private BitSet retain(BitSet codes, Predicate<String> matches) {
+            BitSet retained = new BitSet();
+            for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+                if (matches.test(decode(code))) {
+                    retained.set(code);
+                }
+            }
+            return retained;
+        }
+
+        //3-gram 이 모두 있는 코드만 실제 값과 비교한다. 3글자보다 짧으면 소문자 값을 훑는다.
+        private BitSet containing(String text) {
+            BitSet candidates;
+            if (text.length() < GRAM) {
+                candidates = new BitSet(lowered.size());
+                candidates.set(0, lowered.size());
+            } else {
+                candidates = null;
+                for (int i = 0; i + GRAM <= text.length(); i++) {
+                    BitSet codes = grams.get(text.substring(i, i + GRAM));
+                    if (codes == null) {
+                        return new BitSet();
+                    }
+                    candidates = and(candidates, codes);
+                }
+                if (text.length() == GRAM) {
+                    return candidates;
+                }
+            }
+            BitSet codes = new BitSet();
+            for (int code = candidates.nextSetBit(0); code >= 0; code = candidates.nextSetBit(code + 1)) {
+                if (lowered.get(code).contains(text)) {
+                    codes.set(code);
+                }
+            }
+            return codes;
+        }
+
+        private static BitSet and(BitSet codes, BitSet other) {
+            if (codes == null) {
+                return (BitSet) other.clone();
+            }
+            codes.and(other);
+            return codes;
+        }
+    }
+
+    private static class Store {
+        private long[] ids;
+        private int[] ages;
+        private long[] teamIds;
+        private int[] usernames;
+        private int size;
+        private final BitSet live = new BitSet();
+        private final TreeMap<Integer, BitSet> ageIndex = new TreeMap<>();
+        private final Map<Long, BitSet> teamIndex = new HashMap<>();
+        //id 가 증가하는 순서로만 들어왔으면 슬롯 순서가 곧 id 순서다.
+        private boolean ordered = true;
+
+        private final Map<Long, Integer> slots = new HashMap<>();
+        private UsernameDictionary usernameDictionary = new UsernameDictionary();
+        private final Dictionary teamNameDictionary = new Dictionary();
+        private final Map<Long, Integer> teamNames = new HashMap<>();
+
+        Store(int capacity) {
+            ids = new long[capacity];
+            ages = new int[capacity];
+            teamIds = new long[capacity];
+            usernames = new int[capacity];
+        }
+
+        void putMember(long id, String username, int age, long teamId) {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                if (size == ids.length) {
+                    grow();
+                }
+                slot = size++;
+                if (slot > 0 && ids[slot - 1] > id) {
+                    ordered = false;
+                }
+                ids[slot] = id;
+                slots.put(id, slot);
+                live.set(slot);
+            } else {
+                unindex(slot);
+            }
+            ages[slot] = age;
+            teamIds[slot] = teamId;
+            usernames[slot] = usernameDictionary.encode(username);
+            index(slot);
+            //바뀐 username 이 쌓여서 사전이 회원 수의 두 배를 넘으면 다시 만든다.
+            if (usernameDictionary.size() > slots.size() * 2 + 16) {
+                compact();
+            }
+        }
+
+        void removeMember(long id) {
+            Integer slot = slots.remove(id);
+            if (slot != null) {
+                live.clear(slot);
+                unindex(slot);
+            }
+            //지워진 슬롯이 절반을 넘으면 배열을 다시 채운다.
+            if (size - slots.size() > size / 2) {
+                compact();
+            }
+        }
+
+        void putTeam(long id, String name) {
+            teamNames.put(id, teamNameDictionary.encode(name));
+        }
+
+        void removeTeam(long id) {
+            teamNames.remove(id);
+        }
+
+        int[] match(MemberSearchCondition condition, boolean usernameIgnoreCase) {
+            BitSet usernameCodes = usernameDictionary.match(condition.getUsername(),
+                    condition.getUsernamePrefix(), condition.getUsernameContains(), usernameIgnoreCase);
+            if (usernameCodes != null && usernameCodes.isEmpty()) {
+                return new int[0];
+            }
+            long[] teams = null;
+            if (hasText(condition.getTeamName())) {
+                teams = teamIds(condition.getTeamName());
+                if (teams.length == 0) {
+                    return new int[0];
+                }
+            }
+
+            BitSet candidates = (BitSet) live.clone();
+            if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+                filterAge(candidates, condition.getAgeGoe(), condition.getAgeLoe());
+            }
+            if (teams != null) {
+                BitSet teamSlots = new BitSet(size);
+                for (long teamId : teams) {
+                    BitSet slotsOfTeam = teamIndex.get(teamId);
+                    if (slotsOfTeam != null) {
+                        teamSlots.or(slotsOfTeam);
+                    }
+                }
+                candidates.and(teamSlots);
+            }
+
+            int[] matches = new int[candidates.cardinality()];
+            int count = 0;
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (usernameCodes != null && (usernames[slot] < 0 || !usernameCodes.get(usernames[slot]))) {
+                    continue;
+                }
+                matches[count++] = slot;
+            }
+            matches = Arrays.copyOf(matches, count);
+            if (!ordered) {
+                matches = Arrays.stream(matches).boxed()
+                        .sorted((a, b) -> Long.compare(ids[a], ids[b]))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+            }
+            return matches;
+        }
+
+        List<MemberTeamDto> toDtos(int[] matches, int from, int to) {
+            List<MemberTeamDto> content = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                int slot = matches[i];
+                long teamId = teamIds[slot];
+                Integer teamName = teamId == NO_TEAM ? null : teamNames.get(teamId);
+                content.add(new MemberTeamDto(ids[slot], usernameDictionary.decode(usernames[slot]), ages[slot],
+                        teamId == NO_TEAM ? null : teamId,
+                        teamName == null ? null : teamNameDictionary.decode(teamName)));
+            }
+            return content;
+        }
+
+        private long[] teamIds(String teamName) {
+            int code = teamNameDictionary.find(teamName);
+            return teamNames.entrySet().stream()
+                    .filter(entry -> code >= 0 && entry.getValue() == code)
+                    .mapToLong(Map.Entry::getKey)
+                    .toArray();
+        }
+
+        //범위 안의 나이가 절반을 넘으면 범위 밖 나이들의 비트맵을 빼는 쪽이 OR 할 비트맵 수가 적다.
+        private void filterAge(BitSet candidates, Integer ageGoe, Integer ageLoe) {
+            int from = ageGoe != null ? ageGoe : Integer.MIN_VALUE;
+            int to = ageLoe != null ? ageLoe : Integer.MAX_VALUE;
+            if (from > to) {
+                candidates.clear();
+                return;
+            }
+            NavigableMap<Integer, BitSet> inside = ageIndex.subMap(from, true, to, true);
+            if (inside.size() * 2 <= ageIndex.size()) {
+                BitSet ageSlots = new BitSet(size);
+                inside.values().forEach(ageSlots::or);
+                candidates.and(ageSlots);
+            } else {
+                ageIndex.headMap(from, false).values().forEach(candidates::andNot);
+                ageIndex.tailMap(to, false).values().forEach(candidates::andNot);
+            }
+        }
+
+        private void index(int slot) {
+            ageIndex.computeIfAbsent(ages[slot], key -> new BitSet()).set(slot);
+            teamIndex.computeIfAbsent(teamIds[slot], key -> new BitSet()).set(slot);
+        }
+
+        private void unindex(int slot) {
+            BitSet ageSlots = ageIndex.get(ages[slot]);
+            ageSlots.clear(slot);
+            if (ageSlots.isEmpty()) {
+                ageIndex.remove(ages[slot]);
+            }
+            BitSet teamSlots = teamIndex.get(teamIds[slot]);
+            teamSlots.clear(slot);
+            if (teamSlots.isEmpty()) {
+                teamIndex.remove(teamIds[slot]);
+            }
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            teamIds = Arrays.copyOf(teamIds, capacity);
+            usernames = Arrays.copyOf(usernames, capacity);
+        }
+
+        //지워진 슬롯을 없애고 username 사전도 살아 있는 회원의 값으로 다시 만든다.
+        private void compact() {
+            UsernameDictionary oldDictionary = usernameDictionary;
+            usernameDictionary = new UsernameDictionary();
+            int to = 0;
+            for (int from = 0; from < size; from++) {
+                if (!live.get(from)) {
+                    continue;
+                }
+                ids[to] = ids[from];
+                ages[to] = ages[from];
+                teamIds[to] = teamIds[from];
+                usernames[to] = usernameDictionary.encode(oldDictionary.decode(usernames[from]));
+                slots.put(ids[to], to);
+                to++;
+            }
+            size = to;
+            //슬롯 번호가 바뀌었으므로 비트맵을 다시 만든다.
+            live.clear();
+            live.set(0, size);
+            ageIndex.clear();
+            teamIndex.clear();
+            for (int slot = 0; slot < size; slot++) {
+                index(slot);
+            }
+        }
+    }
+}
@@ -2,9 +2,11 @@ package com.changddao.querydsl.repository;
 
 import com.changddao.querydsl.entity.Member;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 public interface MemberRepository extends JpaRepository<Member, Long> ,MemberRepositoryCustom {
+    @Transactional(readOnly = true)
     List<Member> findByUsername(String username);
 }
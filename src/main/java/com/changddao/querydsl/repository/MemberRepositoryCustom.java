@@ -3,15 +3,53 @@ package com.changddao.querydsl.repository;
 import com.changddao.querydsl.dto.MemberDto;
 import com.changddao.querydsl.dto.MemberSearchCondition;
 import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
 
+    List<List<MemberTeamDto>> searchAll(List<MemberSearchCondition> conditions);
+
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
 
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+
+    Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, boolean exactCount);
+
+    Page<MemberTeamDto> searchPageIndexed(MemberSearchCondition condition, Pageable pageable);
+
+    List<MemberTeamDto> searchContent(MemberSearchCondition condition, Pageable pageable);
+
+    long searchCount(MemberSearchCondition condition);
+
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+
+    List<MemberTeamDto> searchAfter(MemberSearchCondition condition, Long lastMemberId, int size);
+
+    Stream<MemberTeamDto> searchStream(MemberSearchCondition condition, int fetchSize);
+
+    long forEachRow(MemberSearchCondition condition, int fetchSize, MemberRowHandler handler);
+
+    long forEachBatch(MemberSearchCondition condition, MemberTeamRowBuffer buffer, Consumer<MemberTeamRowBuffer> consumer);
+
+    List<Member> findAll(FetchPlan fetchPlan);
+
+    long bulkIncrementAge(MemberSearchCondition condition);
+
+    long bulkIncrementAge(MemberSearchCondition condition, int chunkSize);
+
+    long bulkRename(MemberSearchCondition condition, String username);
+
+    long bulkRename(MemberSearchCondition condition, String username, int chunkSize);
+
+    long bulkDelete(MemberSearchCondition condition);
+
+    long bulkDelete(MemberSearchCondition condition, int chunkSize);
 }
@@ -4,30 +4,247 @@ import com.changddao.querydsl.dto.MemberDto;
 import com.changddao.querydsl.dto.MemberSearchCondition;
 import com.changddao.querydsl.dto.MemberTeamDto;
 import com.changddao.querydsl.dto.QMemberTeamDto;
-import com.querydsl.core.QueryResults;
+import com.changddao.querydsl.entity.Member;
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.changddao.querydsl.entity.QMember.member;
 import static com.changddao.querydsl.entity.QTeam.team;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 import static org.springframework.util.StringUtils.hasText;
 
+@Slf4j
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchQueryCache queryCache;
+    private final MemberCountEstimator countEstimator;
+    private final MemberUsernameIndex usernameIndex;
+    private final MemberReadModel readModel;
+    private final MemberDataVersion dataVersion;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTemplate;
+    private final Executor queryExecutor;
 
-    public MemberRepositoryImpl(EntityManager em) {
+    @Value("${querydsl.search.parallel-count:false}")
+    private boolean parallelCount;
+
+    @Value("${querydsl.search.count-timeout-ms:1000}")
+    private long countTimeoutMillis;
+
+    //offset 이 이 값 이상인 페이지는 member.id 페이지를 먼저 구하는 deferred join 으로 조회한다. (음수면 사용 안 함)
+    @Value("${querydsl.search.deferred-join-offset:-1}")
+    private long deferredJoinOffset;
+
+    public MemberRepositoryImpl(EntityManager em, MemberSearchQueryCache queryCache,
+                                MemberCountEstimator countEstimator, MemberUsernameIndex usernameIndex,
+                                MemberReadModel readModel, MemberDataVersion dataVersion,
+                                PlatformTransactionManager transactionManager,
+                                @Qualifier("queryExecutor") Executor queryExecutor) {
+        this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.queryCache = queryCache;
+        this.countEstimator = countEstimator;
+        this.usernameIndex = usernameIndex;
+        this.readModel = readModel;
+        this.dataVersion = dataVersion;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+        this.queryExecutor = queryExecutor;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
+        List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+        return PageableExecutionUtils.getPage(content, pageable, () -> queryCache.count(em, condition));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return searchPageComplex(condition, pageable, true);
+    }
+
+    /*
+     * exactCount 가 false 면 전체 건수를 테이블 통계나 캐시된 count 로 대신한다. (totalExact = false)
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, boolean exactCount) {
+        if (!exactCount) {
+            List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+            if (content.size() < pageable.getPageSize() && (pageable.getOffset() == 0 || !content.isEmpty())) {
+                return new EstimatedPage<>(content, pageable, pageable.getOffset() + content.size(), true);
+            }
+            //추정치가 현재 페이지보다 작게 나와도 지금까지 본 건수보다 작아지지 않게 한다.
+            long estimated = Math.max(countEstimator.estimate(em, condition), pageable.getOffset() + content.size());
+            return new EstimatedPage<>(content, pageable, estimated, false);
+        }
+        if (parallelCount) {
+            return searchPageParallel(condition, pageable);
+        }
+        List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+
+        //첫 페이지가 덜 찼거나 마지막 페이지면 count 쿼리를 생략한다.
+        return PageableExecutionUtils.getPage(content, pageable, () -> queryCache.count(em, condition));
+    }
+
+    /*
+     * 읽기 모델의 나이/팀 비트맵으로 id 페이지와 전체 건수를 구하고, DB 는 그 페이지의 id 로만 조회한다.
+     * 읽기 모델을 껐거나 아직 준비되지 않은 경우에는 searchPageComplex 와 같다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<MemberTeamDto> searchPageIndexed(MemberSearchCondition condition, Pageable pageable) {
+        if (!readModel.isReady()) {
+            return searchPageComplex(condition, pageable);
+        }
+        Page<Long> ids = readModel.findIds(condition, pageable);
+        return new PageImpl<>(queryCache.fetchByIds(em, ids.getContent()), pageable, ids.getTotalElements());
+    }
+
+    /*
+     * count 를 queryExecutor 에서 별도 트랜잭션(커넥션)으로 먼저 시작하고 내용은 현재 스레드에서 조회한다.
+     * count 가 countTimeoutMillis 안에 끝나지 않으면 기다리지 않고 추정치를 돌려준다. (totalExact = false)
+     * 늦은 count 가 스레드와 커넥션을 계속 잡고 있지 않도록 count 쿼리에도 남은 시간만큼 타임아웃을 걸고,
+     * 시간이 지나면 아직 큐에 있는 count 는 취소한다.
+     */
+    private Page<MemberTeamDto> searchPageParallel(MemberSearchCondition condition, Pageable pageable) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(countTimeoutMillis);
+        CompletableFuture<Long> count;
+        try {
+            count = CompletableFuture.supplyAsync(() -> readOnlyTemplate.execute(status -> {
+                //큐에서 기다린 시간을 뺀 나머지만 DB 에 준다.
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                return queryCache.count(em, condition, Math.max(remaining, 1));
+            }), queryExecutor);
+        } catch (RejectedExecutionException e) {
+            //풀이 가득 찼으면 기존처럼 현재 스레드에서 순서대로 조회한다.
+            List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+            return PageableExecutionUtils.getPage(content, pageable, () -> queryCache.count(em, condition));
+        }
+        List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+
+        //첫 페이지가 덜 찼거나 마지막 페이지면 count 결과를 기다리지 않는다.
+        if (content.size() < pageable.getPageSize() && (pageable.getOffset() == 0 || !content.isEmpty())) {
+            count.cancel(false);
+            return new EstimatedPage<>(content, pageable, pageable.getOffset() + content.size(), true);
+        }
+        Long total = awaitCount(count, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        if (total == null) {
+            count.cancel(false);
+            //테이블 통계나 캐시된 count 가 있으면 그걸 쓰고, 없으면 다음 페이지가 있다고 보고 한 페이지만큼 더 있는 것으로 추정한다.
+            long seen = pageable.getOffset() + content.size();
+            Long cached = countEstimator.cachedEstimate(condition);
+            long estimated = cached != null ? Math.max(cached, seen) : seen + pageable.getPageSize();
+            return new EstimatedPage<>(content, pageable, estimated, false);
+        }
+        countEstimator.record(condition, total);
+        return new EstimatedPage<>(content, pageable, total, true);
+    }
+
+    private List<MemberTeamDto> fetchPage(MemberSearchCondition condition, long offset, int limit) {
+        if (deferredJoinOffset >= 0 && offset >= deferredJoinOffset) {
+            return queryCache.fetchDeferred(em, condition, offset, limit);
+        }
+        return queryCache.fetch(em, condition, offset, limit);
+    }
+
+    private Long awaitCount(CompletableFuture<Long> count, long timeoutMillis) {
+        try {
+            return count.get(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("count query exceeded {}ms, returning estimated total", countTimeoutMillis);
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("count query failed, returning estimated total", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /*
+     * 페이지 내용과 전체 건수를 따로 조회한다. 각자 트랜잭션(커넥션)을 잡으므로 다른 스레드에서 동시에 실행할 수 있다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<MemberTeamDto> searchContent(MemberSearchCondition condition, Pageable pageable) {
+        return fetchPage(condition, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long searchCount(MemberSearchCondition condition) {
+        return queryCache.count(em, condition);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        //count 쿼리 없이 한 건 더 조회해서 다음 페이지 여부만 판단한다.
+        List<MemberTeamDto> content = fetchPage(condition, pageable.getOffset(), pageable.getPageSize() + 1);
+
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content.remove(pageable.getPageSize());
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MemberTeamDto> searchAfter(MemberSearchCondition condition, Long lastMemberId, int size) {
+        //offset 대신 마지막으로 조회한 member.id 이후부터 조회한다.
+        return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -38,22 +255,22 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
+                        memberIdGt(lastMemberId),
                         usernameEq(condition.getUsername()),
+                        usernameIndex.predicate(condition.getUsernamePrefix(), condition.getUsernameContains()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
-        return new PageImpl<>(content, pageable,total);
+                .orderBy(member.id.asc())
+                .limit(size)
+                .fetch();
     }
 
     @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+    public Stream<MemberTeamDto> searchStream(MemberSearchCondition condition, int fetchSize) {
+        //전체 결과를 List 로 만들지 않고 커서로 한 건씩 읽는다. 트랜잭션 안에서 소비하고 닫아야 한다.
+        return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -63,34 +280,86 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 ))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetch();
+                .where(streamConditions(condition))
+                .orderBy(member.id.asc())
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .setHint(HINT_READONLY, true)
+                .stream();
+    }
 
-        long total = queryFactory.select(member)
+    /*
+     * searchStream 과 같은 순서로 읽되 행마다 DTO 를 만들지 않고 컬럼 값을 handler 에 바로 넘긴다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long forEachRow(MemberSearchCondition condition, int fetchSize, MemberRowHandler handler) {
+        long count = 0;
+        try (Stream<Tuple> rows = queryFactory
+                .select(member.id, member.username, member.age, team.id, team.name)
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetchCount();
+                .where(streamConditions(condition))
+                .orderBy(member.id.asc())
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .setHint(HINT_READONLY, true)
+                .stream()) {
+            Iterator<Tuple> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Tuple row = iterator.next();
+                handler.row(row.get(0, Long.class), row.get(1, String.class), row.get(2, Integer.class),
+                        row.get(3, Long.class), row.get(4, String.class));
+                count++;
+            }
+        }
+        return count;
+    }
 
+    @Override
+    @Transactional(readOnly = true)
+    public long forEachBatch(MemberSearchCondition condition, MemberTeamRowBuffer buffer,
+                             Consumer<MemberTeamRowBuffer> consumer) {
+        return queryCache.forEachBatch(em, condition, buffer, consumer);
+    }
 
-        return new PageImpl<>(content, pageable,total);
+    private Predicate[] streamConditions(MemberSearchCondition condition) {
+        return new Predicate[]{
+                usernameEq(condition.getUsername()),
+                usernameIndex.predicate(condition.getUsernamePrefix(), condition.getUsernameContains()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        return queryCache.fetch(em, condition);
+    }
+
+    /*
+     * 여러 조건을 한 번에 조회한다. 결과는 conditions 순서대로, 조건마다 member.id 순서다.
+     * username 앞부분/부분 일치 값과 어떤 조건을 썼는지가 같은 조건끼리 쿼리 하나로 묶어서
+     * username in (...), team.name in (...), 가장 넓은 나이 범위로 조회한 뒤 조건별로 다시 나눈다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<List<MemberTeamDto>> searchAll(List<MemberSearchCondition> conditions) {
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            groups.computeIfAbsent(batchGroup(conditions.get(i)), key -> new ArrayList<>()).add(i);
+        }
+
+        List<List<MemberTeamDto>> results = new ArrayList<>(Collections.nCopies(conditions.size(), null));
+        for (List<Integer> group : groups.values()) {
+            List<MemberSearchCondition> grouped = group.stream().map(conditions::get).collect(Collectors.toList());
+            MemberSearchCondition first = grouped.get(0);
+            Set<String> usernames = grouped.stream().map(MemberSearchCondition::getUsername)
+                    .filter(StringUtils::hasText).collect(Collectors.toCollection(LinkedHashSet::new));
+            Set<String> teamNames = grouped.stream().map(MemberSearchCondition::getTeamName)
+                    .filter(StringUtils::hasText).collect(Collectors.toCollection(LinkedHashSet::new));
+
+            List<MemberTeamDto> rows = queryFactory
                     .select(new QMemberTeamDto(
                             member.id.as("memberId"),
                             member.username,
@@ -101,12 +370,233 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                     .from(member)
                     .leftJoin(member.team, team)
                     .where(
-                            usernameEq(condition.getUsername()),
-                            teamNameEq(condition.getTeamName()),
-                            ageGoe(condition.getAgeGoe()),
-                            ageLoe(condition.getAgeLoe())
+                            usernames.isEmpty() ? null : member.username.in(usernames),
+                            teamNames.isEmpty() ? null : team.name.in(teamNames),
+                            ageRanges(grouped),
+                            usernameIndex.predicate(first.getUsernamePrefix(), first.getUsernameContains())
                     )
+                    .orderBy(member.id.asc())
                     .fetch();
+
+            for (int i : group) {
+                MemberSearchCondition condition = conditions.get(i);
+                results.set(i, rows.stream()
+                        .filter(row -> textMatches(condition.getUsername(), row.getUsername(), usernames)
+                                && textMatches(condition.getTeamName(), row.getTeamName(), teamNames)
+                                && (condition.getAgeGoe() == null || row.getAge() >= condition.getAgeGoe())
+                                && (condition.getAgeLoe() == null || row.getAge() <= condition.getAgeLoe()))
+                        .collect(Collectors.toList()));
+            }
+        }
+        return results;
+    }
+
+    /*
+     * 그룹에 있는 나이 범위를 겹치는 것끼리 합쳐서 OR 로 묶는다.
+     * 떨어진 범위를 min/max 하나로 합치면 그 사이 행까지 읽게 된다.
+     */
+    static Predicate ageRanges(List<MemberSearchCondition> conditions) {
+        List<int[]> ranges = conditions.stream()
+                .filter(condition -> condition.getAgeGoe() != null || condition.getAgeLoe() != null)
+                .map(condition -> new int[]{
+                        condition.getAgeGoe() != null ? condition.getAgeGoe() : Integer.MIN_VALUE,
+                        condition.getAgeLoe() != null ? condition.getAgeLoe() : Integer.MAX_VALUE})
+                .sorted(Comparator.comparingInt(range -> range[0]))
+                .collect(Collectors.toList());
+        BooleanBuilder builder = new BooleanBuilder();
+        int[] current = null;
+        for (int[] range : ranges) {
+            if (current != null && range[0] <= (long) current[1] + 1) {
+                current[1] = Math.max(current[1], range[1]);
+                continue;
+            }
+            if (current != null) {
+                builder.or(ageRange(current));
+            }
+            current = range;
+        }
+        if (current != null) {
+            builder.or(ageRange(current));
+        }
+        return builder.getValue();
+    }
+
+    private static BooleanExpression ageRange(int[] range) {
+        BooleanExpression goe = range[0] != Integer.MIN_VALUE ? member.age.goe(range[0]) : null;
+        BooleanExpression loe = range[1] != Integer.MAX_VALUE ? member.age.loe(range[1]) : null;
+        return goe == null ? loe : loe == null ? goe : goe.and(loe);
+    }
+
+    //username/teamName 값과 나이 값만 다른 조건은 같은 그룹이다.
+    private List<Object> batchGroup(MemberSearchCondition condition) {
+        return Arrays.asList(hasText(condition.getUsername()), hasText(condition.getTeamName()),
+                condition.getAgeGoe() != null, condition.getAgeLoe() != null,
+                hasText(condition.getUsernamePrefix()) ? condition.getUsernamePrefix() : null,
+                hasText(condition.getUsernameContains()) ? condition.getUsernameContains() : null);
+    }
+
+    /*
+     * in (...) 로 가져온 값이 요청한 값과 같은지. 대소문자를 구분하지 않는 collation 이면 DB 가 대소문자만 다른 값을 돌려주므로
+     * 요청 값 중 정확히 같은 것이 없을 때만 대소문자를 무시하고 비교한다.
+     */
+    private boolean textMatches(String requested, String value, Set<String> requestedValues) {
+        if (!hasText(requested)) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        return requested.equals(value) || (!requestedValues.contains(value) && requested.equalsIgnoreCase(value));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Member> findAll(FetchPlan fetchPlan) {
+        return fetchPlan.apply(queryFactory.selectFrom(member))
+                .orderBy(member.id.asc())
+                .setHint(HINT_READONLY, true)
+                .fetch();
+    }
+
+    @Override
+    public long bulkIncrementAge(MemberSearchCondition condition) {
+        return bulkIncrementAge(condition, 0);
+    }
+
+    @Override
+    public long bulkIncrementAge(MemberSearchCondition condition, int chunkSize) {
+        return executeBulk(condition, chunkSize, predicate -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .where(predicate)
+                .execute());
+    }
+
+    @Override
+    public long bulkRename(MemberSearchCondition condition, String username) {
+        return bulkRename(condition, username, 0);
+    }
+
+    @Override
+    public long bulkRename(MemberSearchCondition condition, String username, int chunkSize) {
+        List<Long> ids = indexedIds(condition);
+        long affected = executeBulk(condition, chunkSize, predicate -> queryFactory
+                .update(member)
+                .set(member.username, username)
+                .where(predicate)
+                .execute());
+        usernameIndex.indexAfterCommit(ids.stream().collect(Collectors.toMap(Function.identity(), id -> username)));
+        return affected;
+    }
+
+    @Override
+    public long bulkDelete(MemberSearchCondition condition) {
+        return bulkDelete(condition, 0);
+    }
+
+    @Override
+    public long bulkDelete(MemberSearchCondition condition, int chunkSize) {
+        List<Long> ids = indexedIds(condition);
+        long affected = executeBulk(condition, chunkSize, predicate -> queryFactory
+                .delete(member)
+                .where(predicate)
+                .execute());
+        usernameIndex.removeAfterCommit(ids);
+        return affected;
+    }
+
+    //벌크 연산은 Hibernate 이벤트가 나가지 않으므로 username 색인에 반영할 id 를 미리 구해둔다.
+    private List<Long> indexedIds(MemberSearchCondition condition) {
+        if (!usernameIndex.isEnabled()) {
+            return new ArrayList<>();
+        }
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(bulkPredicate(condition))
+                .fetch();
+    }
+
+    /*
+     * 벌크 연산은 영속성 컨텍스트를 거치지 않으므로, 실행 전에 조건에 걸리는 영속 상태의 Member 만 골라두고
+     * 실행 후 그 엔티티들만 detach 한다. (em.clear() 로 전부 날리지 않는다)
+     * chunkSize 가 0보다 크면 member.id 범위로 나눠서 chunk 마다 별도 트랜잭션으로 실행해 락 점유 시간을 줄인다.
+     * 이미 트랜잭션 안에서 호출되면 그 트랜잭션에 참여한다.
+     */
+    private long executeBulk(MemberSearchCondition condition, int chunkSize, Function<Predicate, Long> statement) {
+        Predicate predicate = bulkPredicate(condition);
+        List<Member> staleMembers = managedMembers(predicate);
+
+        long affected = 0;
+        if (chunkSize <= 0) {
+            affected = transactionTemplate.execute(status -> statement.apply(predicate));
+        } else {
+            Tuple range = queryFactory
+                    .select(member.id.min(), member.id.max())
+                    .from(member)
+                    .where(predicate)
+                    .fetchOne();
+            Long minId = range.get(member.id.min());
+            Long maxId = range.get(member.id.max());
+            if (minId != null) {
+                for (long from = minId; from <= maxId; from += chunkSize) {
+                    Predicate chunk = ExpressionUtils.allOf(predicate, member.id.between(from, from + chunkSize - 1));
+                    affected += transactionTemplate.execute(status -> statement.apply(chunk));
+                }
+            }
+        }
+
+        staleMembers.forEach(em::detach);
+        //벌크 연산은 Hibernate 이벤트가 나가지 않으므로 읽기 모델은 커밋 후 다시 읽고 변경 번호도 직접 올린다.
+        readModel.rebuildAfterCommit();
+        dataVersion.memberChangedAfterCommit();
+        return affected;
+    }
+
+    private List<Member> managedMembers(Predicate predicate) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return new ArrayList<>();
+        }
+        //벌크 연산 전에 변경 내용을 DB 에 반영해둔다.
+        em.flush();
+        Collection<?> entities = em.unwrap(SessionImplementor.class)
+                .getPersistenceContextInternal()
+                .getEntitiesByKey()
+                .values();
+        List<Member> managed = entities.stream()
+                .filter(Member.class::isInstance)
+                .map(Member.class::cast)
+                .collect(Collectors.toList());
+        if (managed.isEmpty()) {
+            return managed;
+        }
+
+        Set<Long> affectedIds = new HashSet<>(queryFactory
+                .select(member.id)
+                .from(member)
+                .where(predicate, member.in(managed))
+                .fetch());
+        return managed.stream()
+                .filter(m -> affectedIds.contains(m.getId()))
+                .collect(Collectors.toList());
+    }
+
+    private Predicate bulkPredicate(MemberSearchCondition condition) {
+        //update/delete 는 join 을 쓸 수 없으므로 팀 이름 조건은 서브쿼리로 바꾼다.
+        return ExpressionUtils.allOf(
+                usernameEq(condition.getUsername()),
+                usernameIndex.predicate(condition.getUsernamePrefix(), condition.getUsernameContains()),
+                hasText(condition.getTeamName()) ? member.team.id.in(JPAExpressions
+                        .select(team.id)
+                        .from(team)
+                        .where(team.name.eq(condition.getTeamName()))) : null,
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        );
+    }
+
+    private BooleanExpression memberIdGt(Long lastMemberId) {
+        return lastMemberId != null ? member.id.gt(lastMemberId) : null;
     }
 
     private BooleanExpression usernameEq(String username) {
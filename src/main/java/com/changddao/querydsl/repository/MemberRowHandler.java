@@ -0,0 +1,9 @@
+package com.changddao.querydsl.repository;
+
+/*
+ * 조회 결과를 DTO 로 만들지 않고 컬럼 값 그대로 한 행씩 받는다.
+ */
+@FunctionalInterface
+public interface MemberRowHandler {
+    void row(long memberId, String username, int age, Long teamId, String teamName);
+}
@@ -0,0 +1,426 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Team;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+import static org.hibernate.jpa.QueryHints.HINT_TIMEOUT;
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+ * MemberSearchCondition 은 조건 유무 조합이 16가지 뿐이므로
+ * 조합(shape)별로 JPQL 을 한 번만 직렬화해 두고 요청마다 파라미터만 바인딩한다.
+ * 팀 이름 조건은 2차 캐시에 올라간 팀 id 로 바꿔서 team 조인 없이 member.team.id 로 필터링한다.
+ * 결과의 팀 이름도 조인하지 않고 member.team.id 로 2차 캐시의 Team 엔티티에서 채운다.
+ * username 앞부분/부분 일치는 username 색인에서 찾은 member id 로 바꾸고, 색인을 못 쓰면 LIKE 로 조회한다.
+ * forEachBatch 는 같은 JPQL 의 Object[] 결과를 MemberTeamRowBuffer 에 바로 옮긴다. (대량 조회용, 행마다 DTO 를 만들지 않음)
+ * fetchDeferred 는 조건으로 member.id 페이지만 먼저 구하고(인덱스만 읽음) 그 id 로 DTO 컬럼을 조회한다. (deferred join)
+ * 조회 결과는 어느 방식이든 member.id 순서다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberSearchQueryCache implements MeterBinder {
+    private static final int USERNAME = 1;
+    private static final int TEAM_NAME = 1 << 1;
+    private static final int AGE_GOE = 1 << 2;
+    private static final int AGE_LOE = 1 << 3;
+    private static final int MEMBER_IDS = 1 << 4;
+    private static final int USERNAME_PREFIX = 1 << 5;
+    private static final int USERNAME_CONTAINS = 1 << 6;
+    private static final int COUNT = 1 << 7;
+    private static final int IDS = 1 << 8;
+    //조건 비트 순서(= where 절의 파라미터 순서)대로의 이름과 EXPLAIN 예시 값
+    private static final String[] PREDICATE_NAMES =
+            {"username", "teamName", "ageGoe", "ageLoe", "memberIds", "usernamePrefix", "usernameContains"};
+    private static final Object[] PREDICATE_SAMPLES = {"member1", 1L, 10, 40, 1L, "member1%", "%ember1%"};
+
+    private static final Param<String> usernameParam = new Param<>(String.class, "username");
+    @SuppressWarnings("rawtypes")
+    private static final Param<Collection> teamIdsParam = new Param<>(Collection.class, "teamIds");
+    private static final Param<Integer> ageGoeParam = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> ageLoeParam = new Param<>(Integer.class, "ageLoe");
+    @SuppressWarnings("rawtypes")
+    private static final Param<Collection> memberIdsParam = new Param<>(Collection.class, "memberIds");
+    private static final Param<String> usernamePrefixParam = new Param<>(String.class, "usernamePrefix");
+    private static final Param<String> usernameContainsParam = new Param<>(String.class, "usernameContains");
+
+    private final TeamRepository teamRepository;
+    private final MemberUsernameIndex usernameIndex;
+    private final Map<Integer, CompiledQuery> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public List<MemberTeamDto> fetch(EntityManager em, MemberSearchCondition condition) {
+        return fetch(em, condition, -1, -1);
+    }
+
+    public List<MemberTeamDto> fetch(EntityManager em, MemberSearchCondition condition, long offset, int limit) {
+        List<Long> teamIds = teamIds(condition);
+        if (teamIds != null && teamIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> memberIds = memberIds(condition);
+        if (memberIds != null && memberIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query query = createQuery(em, shapeOf(condition, memberIds), condition, teamIds, memberIds);
+        List<?> rows = page(query, offset, limit).getResultList();
+        TeamNames teamNames = new TeamNames(em);
+        List<MemberTeamDto> content = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            content.add(toDto((Object[]) row, teamNames));
+        }
+        return content;
+    }
+
+    /*
+     * offset/limit 를 member.id 만 읽는 쿼리에 걸어서 깊은 페이지에서도 건너뛰는 행은 인덱스에서만 읽게 한다.
+     * 결과는 member.id 순서다.
+     */
+    public List<MemberTeamDto> fetchDeferred(EntityManager em, MemberSearchCondition condition, long offset, int limit) {
+        List<Long> teamIds = teamIds(condition);
+        if (teamIds != null && teamIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> memberIds = memberIds(condition);
+        if (memberIds != null && memberIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query idQuery = createQuery(em, shapeOf(condition, memberIds) | IDS, condition, teamIds, memberIds);
+        @SuppressWarnings("unchecked")
+        List<Long> ids = page(idQuery, offset, limit).getResultList();
+        return fetchByIds(em, ids);
+    }
+
+    /*
+     * member id 목록의 DTO 를 목록 순서대로 조회한다.
+     */
+    public List<MemberTeamDto> fetchByIds(EntityManager em, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        //id in (...) 는 순서를 보장하지 않으므로 id 페이지 순서대로 다시 맞춘다.
+        Map<Long, MemberTeamDto> byId = new HashMap<>(ids.size() * 2);
+        TeamNames teamNames = new TeamNames(em);
+        for (Object row : createQuery(em, MEMBER_IDS, null, null, ids).getResultList()) {
+            MemberTeamDto dto = toDto((Object[]) row, teamNames);
+            byId.put(dto.getMemberId(), dto);
+        }
+        List<MemberTeamDto> content = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            MemberTeamDto dto = byId.get(id);
+            //두 쿼리 사이에 지워진 회원은 건너뛴다.
+            if (dto != null) {
+                content.add(dto);
+            }
+        }
+        return content;
+    }
+
+    /*
+     * 조회 결과를 DTO 로 만들지 않고 buffer 에 채워서 buffer 크기만큼 찰 때마다 consumer 에 넘긴다.
+     * 결과는 member.id 순서다. 스트림으로 읽으므로 트랜잭션 안에서 호출해야 한다.
+     */
+    public long forEachBatch(EntityManager em, MemberSearchCondition condition, MemberTeamRowBuffer buffer,
+                             Consumer<MemberTeamRowBuffer> consumer) {
+        List<Long> teamIds = teamIds(condition);
+        if (teamIds != null && teamIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> memberIds = memberIds(condition);
+        if (memberIds != null && memberIds.isEmpty()) {
+            return 0;
+        }
+        Query query = createQuery(em, shapeOf(condition, memberIds), condition, teamIds, memberIds)
+                .setHint(HINT_FETCH_SIZE, buffer.capacity())
+                .setHint(HINT_READONLY, true);
+        long count = 0;
+        TeamNames teamNames = new TeamNames(em);
+        buffer.clear();
+        try (Stream<?> rows = query.getResultStream()) {
+            Iterator<?> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                count++;
+                Object[] row = (Object[]) iterator.next();
+                if (buffer.add(row, teamNames.get((Long) row[3]))) {
+                    consumer.accept(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        if (buffer.size() > 0) {
+            consumer.accept(buffer);
+            buffer.clear();
+        }
+        return count;
+    }
+
+    public long count(EntityManager em, MemberSearchCondition condition) {
+        return count(em, condition, 0);
+    }
+
+    /*
+     * timeoutMillis 가 0보다 크면 그 시간이 지나도 끝나지 않는 count 는 DB 에서 취소한다. (JDBC 타임아웃은 초 단위라 올림한다)
+     */
+    public long count(EntityManager em, MemberSearchCondition condition, long timeoutMillis) {
+        List<Long> teamIds = teamIds(condition);
+        if (teamIds != null && teamIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> memberIds = memberIds(condition);
+        if (memberIds != null && memberIds.isEmpty()) {
+            return 0;
+        }
+        Query query = createQuery(em, shapeOf(condition, memberIds) | COUNT, condition, teamIds, memberIds);
+        if (timeoutMillis > 0) {
+            query.setHint(HINT_TIMEOUT, (int) ((timeoutMillis + 999) / 1000));
+        }
+        return (Long) query.getSingleResult();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("querydsl.search.plan.cache", hitCount, AtomicLong::get)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("querydsl.search.plan.cache", missCount, AtomicLong::get)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /*
+     * 조건 조합에 해당하는 조회 JPQL.
+     */
+    String jpql(EntityManager em, MemberSearchCondition condition) {
+        return cache.computeIfAbsent(shapeOf(condition, null), key -> compile(em, key)).jpql;
+    }
+
+    /*
+     * EXPLAIN 확인용. 조건이 하나 이상인 조회 조합마다 이름("username+ageGoe") -> JPQL 과 파라미터 순서대로의 예시 값.
+     * 조건 비트에서 만들므로 조건을 더하면 PREDICATE_NAMES, PREDICATE_SAMPLES 에만 더하면 된다.
+     * memberIds 는 앞부분/부분 일치를 색인에서 바꾼 조건이라 둘과 같이 나오지 않는다.
+     */
+    Map<String, SampleQuery> sampleQueries(EntityManager em) {
+        int predicates = Integer.numberOfTrailingZeros(COUNT);
+        Map<String, SampleQuery> samples = new LinkedHashMap<>();
+        for (int shape = 1; shape < COUNT; shape++) {
+            if ((shape & MEMBER_IDS) != 0 && (shape & (USERNAME_PREFIX | USERNAME_CONTAINS)) != 0) {
+                continue;
+            }
+            List<String> names = new ArrayList<>();
+            List<Object> args = new ArrayList<>();
+            for (int i = 0; i < predicates; i++) {
+                if ((shape & (1 << i)) != 0) {
+                    names.add(PREDICATE_NAMES[i]);
+                    args.add(PREDICATE_SAMPLES[i]);
+                }
+            }
+            String jpql = cache.computeIfAbsent(shape, key -> compile(em, key)).jpql;
+            samples.put(String.join("+", names), new SampleQuery(jpql, args));
+        }
+        return samples;
+    }
+
+    private Query page(Query query, long offset, int limit) {
+        if (offset > 0) {
+            query.setFirstResult((int) offset);
+        }
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+        return query;
+    }
+
+    //(member.id, member.username, member.age, member.team.id) 행
+    private MemberTeamDto toDto(Object[] row, TeamNames teamNames) {
+        Long teamId = (Long) row[3];
+        return new MemberTeamDto((Long) row[0], (String) row[1], (Integer) row[2], teamId, teamNames.get(teamId));
+    }
+
+    private List<Long> teamIds(MemberSearchCondition condition) {
+        return hasText(condition.getTeamName()) ? teamRepository.findIdsByName(condition.getTeamName()) : null;
+    }
+
+    private List<Long> memberIds(MemberSearchCondition condition) {
+        return usernameIndex.findIds(condition.getUsernamePrefix(), condition.getUsernameContains());
+    }
+
+    private Query createQuery(EntityManager em, int shape, MemberSearchCondition condition,
+                              List<Long> teamIds, List<Long> memberIds) {
+        CompiledQuery compiled = cache.get(shape);
+        if (compiled != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            compiled = cache.computeIfAbsent(shape, key -> compile(em, key));
+        }
+
+        Map<ParamExpression<?>, Object> params = new HashMap<>();
+        if ((shape & USERNAME) != 0) {
+            params.put(usernameParam, condition.getUsername());
+        }
+        if ((shape & TEAM_NAME) != 0) {
+            params.put(teamIdsParam, teamIds);
+        }
+        if ((shape & AGE_GOE) != 0) {
+            params.put(ageGoeParam, condition.getAgeGoe());
+        }
+        if ((shape & AGE_LOE) != 0) {
+            params.put(ageLoeParam, condition.getAgeLoe());
+        }
+        if ((shape & MEMBER_IDS) != 0) {
+            params.put(memberIdsParam, memberIds);
+        }
+        if ((shape & USERNAME_PREFIX) != 0) {
+            params.put(usernamePrefixParam, escapeLike(condition.getUsernamePrefix()) + "%");
+        }
+        if ((shape & USERNAME_CONTAINS) != 0) {
+            params.put(usernameContainsParam, "%" + escapeLike(condition.getUsernameContains()) + "%");
+        }
+
+        Query query = em.createQuery(compiled.jpql);
+        JPAUtil.setConstants(query, compiled.constants, params);
+        return query;
+    }
+
+    private CompiledQuery compile(EntityManager em, int shape) {
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+        JPAQuery<?> query;
+        if ((shape & COUNT) != 0) {
+            query = queryFactory.select(member.count()).from(member);
+        } else if ((shape & IDS) != 0) {
+            query = queryFactory.select(member.id).from(member).orderBy(member.id.asc());
+        } else {
+            //fetchDeferred 의 id 페이지와 같은 순서여야 페이지마다 방식이 바뀌어도 행이 겹치거나 빠지지 않는다.
+            //team.id 는 member 의 외래 키라 조인 없이 읽고 팀 이름은 TeamNames 로 채운다.
+            query = queryFactory.select(member.id, member.username, member.age, member.team.id)
+                    .from(member)
+                    .orderBy(member.id.asc());
+        }
+        query.where(
+                (shape & USERNAME) != 0 ? member.username.eq(usernameParam) : null,
+                (shape & TEAM_NAME) != 0 ? Expressions.booleanTemplate("{0} in ({1})", member.team.id, teamIdsParam) : null,
+                (shape & AGE_GOE) != 0 ? member.age.goe(ageGoeParam) : null,
+                (shape & AGE_LOE) != 0 ? member.age.loe(ageLoeParam) : null,
+                (shape & MEMBER_IDS) != 0 ? Expressions.booleanTemplate("{0} in ({1})", member.id, memberIdsParam) : null,
+                //컬럼을 함수로 감싸지 않아야 앞부분 일치가 idx_member_username 을 쓴다. 대소문자는 컬럼 collation 을 따른다.
+                (shape & USERNAME_PREFIX) != 0 ? member.username.like(usernamePrefixParam, '!') : null,
+                (shape & USERNAME_CONTAINS) != 0 ? member.username.like(usernameContainsParam, '!') : null
+        );
+
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(query.getMetadata(), false, null);
+        return new CompiledQuery(serializer.toString(), serializer.getConstants());
+    }
+
+    private int shapeOf(MemberSearchCondition condition, List<Long> memberIds) {
+        int shape = 0;
+        if (memberIds != null) {
+            shape |= MEMBER_IDS;
+        } else {
+            if (hasText(condition.getUsernamePrefix())) {
+                shape |= USERNAME_PREFIX;
+            }
+            if (hasText(condition.getUsernameContains())) {
+                shape |= USERNAME_CONTAINS;
+            }
+        }
+        if (hasText(condition.getUsername())) {
+            shape |= USERNAME;
+        }
+        if (hasText(condition.getTeamName())) {
+            shape |= TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE;
+        }
+        return shape;
+    }
+
+    private String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private static class CompiledQuery {
+        private final String jpql;
+        private final List<Object> constants;
+
+        CompiledQuery(String jpql, List<Object> constants) {
+            this.jpql = jpql;
+            this.constants = constants;
+        }
+    }
+
+    static class SampleQuery {
+        final String jpql;
+        final List<Object> args;
+
+        SampleQuery(String jpql, List<Object> args) {
+            this.jpql = jpql;
+            this.args = args;
+        }
+    }
+
+    /*
+     * 팀 id -> 이름. Team 은 2차 캐시에 있으므로 보통 SQL 없이 찾고, 한 번 찾은 팀은 호출 안에서 다시 찾지 않는다.
+     */
+    private static class TeamNames {
+        private final EntityManager em;
+        private final Map<Long, String> names = new HashMap<>();
+
+        TeamNames(EntityManager em) {
+            this.em = em;
+        }
+
+        String get(Long teamId) {
+            if (teamId == null) {
+                return null;
+            }
+            return names.computeIfAbsent(teamId, id -> {
+                Team found = em.find(Team.class, id);
+                return found == null ? null : found.getName();
+            });
+        }
+    }
+}
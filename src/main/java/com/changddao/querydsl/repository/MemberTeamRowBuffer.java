@@ -0,0 +1,89 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberTeamDto;
+
+/*
+ * MemberTeamDto 컬럼을 기본형 배열에 담는 재사용 버퍼.
+ * 조회 결과(Object[])를 DTO 로 만들지 않고 배열에 바로 옮기므로 행마다 객체를 만들지 않는다.
+ * 버퍼는 다음 묶음을 채울 때 다시 쓰므로 consumer 밖에서 값을 들고 있으면 안 된다. (필요하면 toDto 로 복사)
+ */
+public class MemberTeamRowBuffer {
+    private static final long NO_TEAM = Long.MIN_VALUE;
+
+    private final long[] memberIds;
+    private final String[] usernames;
+    private final int[] ages;
+    private final long[] teamIds;
+    private final String[] teamNames;
+    private int size;
+
+    public MemberTeamRowBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.memberIds = new long[capacity];
+        this.usernames = new String[capacity];
+        this.ages = new int[capacity];
+        this.teamIds = new long[capacity];
+        this.teamNames = new String[capacity];
+    }
+
+    public int capacity() {
+        return memberIds.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memberId(int i) {
+        return memberIds[i];
+    }
+
+    public String username(int i) {
+        return usernames[i];
+    }
+
+    public int age(int i) {
+        return ages[i];
+    }
+
+    public boolean hasTeam(int i) {
+        return teamIds[i] != NO_TEAM;
+    }
+
+    //팀이 없는 행이면 hasTeam 이 false 이고 이 값은 의미가 없다.
+    public long teamId(int i) {
+        return teamIds[i];
+    }
+
+    public String teamName(int i) {
+        return teamNames[i];
+    }
+
+    public MemberTeamDto toDto(int i) {
+        return new MemberTeamDto(memberIds[i], usernames[i], ages[i],
+                hasTeam(i) ? teamIds[i] : null, teamNames[i]);
+    }
+
+    /*
+     * (member.id, member.username, member.age, member.team.id) 순서의 행과 팀 이름을 추가하고 버퍼가 찼는지 돌려준다.
+     */
+    boolean add(Object[] row, String teamName) {
+        memberIds[size] = (Long) row[0];
+        usernames[size] = (String) row[1];
+        ages[size] = (Integer) row[2];
+        teamIds[size] = row[3] == null ? NO_TEAM : (Long) row[3];
+        teamNames[size] = teamName;
+        return ++size == memberIds.length;
+    }
+
+    void clear() {
+        //문자열은 다음 묶음까지 붙잡고 있지 않도록 지운다.
+        for (int i = 0; i < size; i++) {
+            usernames[i] = null;
+            teamNames[i] = null;
+        }
+        size = 0;
+    }
+}
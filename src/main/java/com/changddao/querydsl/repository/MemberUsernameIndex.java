@@ -0,0 +1,508 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.entity.Member;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.QueryBuilder;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+ * username 부분 일치/앞부분 일치 검색용 Lucene 역색인.
+ * username 은 keyword(앞부분 일치)와 3-gram(부분 일치) 두 필드로 색인한다.
+ * 검색어에 맞는 member id 를 먼저 찾고, DB 는 id in (...) 으로 조회한다.
+ *
+ * 엔티티 저장/수정/삭제는 커밋 후 Hibernate 이벤트로 반영하고,
+ * JPQL 벌크 연산이나 JDBC 로 넣은 회원은 호출하는 쪽에서 index/remove 를 불러줘야 한다.
+ * 일치하는 id 가 maxIds 를 넘거나 인덱스를 끈 경우, 기동 후 처음 다 만들기 전에는 LIKE 로 조회한다.
+ * rebuild 는 새 디렉터리에 색인을 따로 만든 뒤 바꿔 끼우고, 그동안 들어온 변경은 새 색인에 다시 반영한다. (MemberReadModel 과 같은 방식)
+ * LIKE 는 idx_member_username 을 타도록 username 컬럼을 그대로 비교하므로 대소문자 구분은 컬럼 collation 을 따른다.
+ * 색인도 querydsl.search.username-ignore-case 로 그 collation 에 맞춘다. (MySQL *_ci 면 true, 소문자로 색인)
+ */
+@Slf4j
+@Component
+public class MemberUsernameIndex implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+    private static final String ID = "id";
+    private static final String USERNAME = "username";
+    private static final String USERNAME_GRAM = "username_gram";
+    private static final int GRAM = 3;
+    private static final String GENERATION_PREFIX = "generation-";
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final String path;
+    private final int maxIds;
+    private final boolean ignoreCase;
+    private final Analyzer gramAnalyzer;
+
+    //rebuild 는 한 번에 하나만 돈다.
+    private final Object rebuildLock = new Object();
+    //live 교체와 변경 반영/pending 기록을 묶는다.
+    private final Object changeLock = new Object();
+    private final AtomicLong generationSeq = new AtomicLong();
+
+    private volatile Generation live;
+    //rebuild 중에 들어온 변경. 새로 만든 색인에 다시 반영한다.
+    private List<IndexChange> pending;
+    private volatile boolean closed;
+
+    public MemberUsernameIndex(EntityManagerFactory emf,
+                               @Value("${querydsl.search.username-index.enabled:true}") boolean enabled,
+                               @Value("${querydsl.search.username-index.path:}") String path,
+                               @Value("${querydsl.search.username-index.max-ids:10000}") int maxIds,
+                               @Value("${querydsl.search.username-ignore-case:false}") boolean ignoreCase) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.path = path;
+        this.maxIds = maxIds;
+        this.ignoreCase = ignoreCase;
+        this.gramAnalyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new NGramTokenizer(GRAM, GRAM);
+                return new TokenStreamComponents(tokenizer,
+                        ignoreCase ? new LowerCaseFilter(tokenizer) : tokenizer);
+            }
+        };
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        //경로가 없으면 메모리에 둔다. 어느 쪽이든 시작할 때 DB 에서 다시 만드므로 이전 실행의 색인은 지운다.
+        if (hasText(path)) {
+            Path root = Paths.get(path);
+            Files.createDirectories(root);
+            try (Stream<Path> children = Files.list(root)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    if (child.getFileName().toString().startsWith(GENERATION_PREFIX)) {
+                        IOUtils.rm(child);
+                    }
+                }
+            }
+        }
+
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Generation last;
+        synchronized (changeLock) {
+            closed = true;
+            last = live;
+            live = null;
+        }
+        if (last != null) {
+            last.close();
+        }
+    }
+
+    /*
+     * 디스크에 남은 인덱스에는 꺼져 있는 동안이나 다른 인스턴스가 바꾼 회원이 빠져 있을 수 있으므로
+     * 항상 DB 의 회원으로 새로 만든다. 다 만들 때까지 findIds 는 null 이므로 검색은 LIKE 로 조회한다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * 새 색인을 만들어 바꿔 끼운다. 그동안 검색은 이전 색인(처음이면 LIKE)으로 한다.
+     * DB 에서 읽기 시작한 뒤에 커밋된 변경은 pending 에 모았다가 새 색인에 다시 반영한다.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.nanoTime();
+            List<IndexChange> changes = new ArrayList<>();
+            synchronized (changeLock) {
+                pending = changes;
+            }
+
+            Generation fresh = null;
+            EntityManager rebuildEm = emf.createEntityManager();
+            try (Stream<Object[]> rows = rebuildEm.createQuery("select m.id, m.username from Member m", Object[].class)
+                    .setHint(HINT_FETCH_SIZE, 1000)
+                    .setHint(HINT_READONLY, true)
+                    .getResultStream()) {
+                fresh = newGeneration();
+                IndexWriter writer = fresh.writer;
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    writer.updateDocument(idTerm((Long) row[0]), document((Long) row[0], (String) row[1]));
+                }
+            } catch (IOException e) {
+                abandon(fresh);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                abandon(fresh);
+                throw e;
+            } finally {
+                rebuildEm.close();
+            }
+
+            Generation previous;
+            int members;
+            synchronized (changeLock) {
+                pending = null;
+                if (closed) {
+                    closeQuietly(fresh);
+                    return;
+                }
+                try {
+                    for (IndexChange change : changes) {
+                        change.apply(fresh.writer);
+                    }
+                } catch (IOException e) {
+                    closeQuietly(fresh);
+                    throw new UncheckedIOException(e);
+                }
+                fresh.dirty = true;
+                members = fresh.writer.getDocStats().numDocs;
+                previous = live;
+                live = fresh;
+            }
+            closeQuietly(previous);
+            log.info("username index rebuilt: {} members in {}ms", members,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /*
+     * 현재 트랜잭션이 커밋된 뒤에 반영한다. 트랜잭션 밖이면 바로 반영한다.
+     */
+    public void indexAfterCommit(Map<Long, String> usernames) {
+        afterCommit(() -> usernames.forEach(this::write));
+    }
+
+    public void removeAfterCommit(Collection<Long> ids) {
+        afterCommit(() -> ids.forEach(this::delete));
+    }
+
+    /*
+     * prefix/contains 에 맞는 member id. 조건이 없으면 null, 인덱스를 못 쓰거나 maxIds 를 넘으면 null 을 돌려준다.
+     */
+    public List<Long> findIds(String prefix, String contains) {
+        if (!enabled || (!hasText(prefix) && !hasText(contains))) {
+            return null;
+        }
+        Generation generation = live;
+        if (generation == null) {
+            //아직 처음 만드는 중이면 빈 결과 대신 LIKE 로 조회하게 한다.
+            return null;
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        if (hasText(prefix)) {
+            query.add(new PrefixQuery(new Term(USERNAME, normalize(prefix))), BooleanClause.Occur.FILTER);
+        }
+        if (hasText(contains)) {
+            query.add(containsQuery(contains), BooleanClause.Occur.FILTER);
+        }
+
+        IndexSearcher searcher = null;
+        try {
+            if (generation.dirty) {
+                generation.dirty = false;
+                generation.searcherManager.maybeRefreshBlocking();
+            }
+            searcher = generation.searcherManager.acquire();
+            TopDocs topDocs = searcher.search(query.build(), maxIds + 1);
+            if (topDocs.scoreDocs.length > maxIds) {
+                return null;
+            }
+            List<Long> ids = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                ids.add(searcher.doc(scoreDoc.doc).getField(ID).numericValue().longValue());
+            }
+            return ids;
+        } catch (AlreadyClosedException e) {
+            //조회하는 사이에 rebuild 로 바뀐 색인이면 이번에는 LIKE 로 조회한다.
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(generation, searcher);
+        }
+    }
+
+    /*
+     * 직접 조립하는 QueryDSL 쿼리용 조건. 인덱스로 찾은 id 가 있으면 id in, 아니면 LIKE.
+     */
+    public BooleanExpression predicate(String prefix, String contains) {
+        if (!hasText(prefix) && !hasText(contains)) {
+            return null;
+        }
+        List<Long> ids = findIds(prefix, contains);
+        if (ids != null) {
+            return ids.isEmpty() ? Expressions.FALSE.isTrue() : member.id.in(ids);
+        }
+        BooleanExpression startsWith = hasText(prefix) ? member.username.startsWith(prefix) : null;
+        BooleanExpression like = hasText(contains) ? member.username.contains(contains) : null;
+        return startsWith == null ? like : startsWith.and(like);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            write((Long) event.getId(), ((Member) event.getEntity()).getUsername());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Member) {
+            write((Long) event.getId(), ((Member) event.getEntity()).getUsername());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            delete((Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return Member.class.equals(persister.getMappedClass());
+    }
+
+    //3글자보다 짧으면 3-gram 을 만들 수 없으므로 keyword 필드에서 와일드카드로 찾는다.
+    private Query containsQuery(String contains) {
+        String text = normalize(contains);
+        if (text.length() < GRAM) {
+            return new WildcardQuery(new Term(USERNAME, "*" + text + "*"));
+        }
+        return new QueryBuilder(gramAnalyzer).createPhraseQuery(USERNAME_GRAM, text);
+    }
+
+    private void write(Long id, String username) {
+        Document document = document(id, username);
+        apply(writer -> writer.updateDocument(idTerm(id), document));
+    }
+
+    private void delete(Long id) {
+        apply(writer -> writer.deleteDocuments(idTerm(id)));
+    }
+
+    //지금 색인에 반영하고, rebuild 중이면 새 색인에도 다시 반영하도록 남긴다.
+    private void apply(IndexChange change) {
+        synchronized (changeLock) {
+            if (closed) {
+                return;
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+            Generation generation = live;
+            if (generation == null) {
+                return;
+            }
+            try {
+                change.apply(generation.writer);
+                generation.dirty = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Document document(Long id, String username) {
+        Document document = new Document();
+        document.add(new StringField(ID, String.valueOf(id), Field.Store.NO));
+        document.add(new StoredField(ID, id));
+        if (username != null) {
+            document.add(new StringField(USERNAME, normalize(username), Field.Store.NO));
+            document.add(new TextField(USERNAME_GRAM, username, Field.Store.NO));
+        }
+        return document;
+    }
+
+    private String normalize(String text) {
+        return ignoreCase ? text.toLowerCase(Locale.ROOT) : text;
+    }
+
+    private Term idTerm(Long id) {
+        return new Term(ID, String.valueOf(id));
+    }
+
+    private Generation newGeneration() throws IOException {
+        Path dir = null;
+        Directory directory;
+        if (hasText(path)) {
+            dir = Paths.get(path).resolve(GENERATION_PREFIX + generationSeq.incrementAndGet());
+            IOUtils.rm(dir);
+            directory = FSDirectory.open(dir);
+        } else {
+            directory = new ByteBuffersDirectory();
+        }
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(gramAnalyzer));
+        return new Generation(dir, directory, writer, new SearcherManager(writer, null));
+    }
+
+    private void release(Generation generation, IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            generation.searcherManager.release(searcher);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //만들다 만 색인은 버리고 pending 도 거둔다. 검색은 이전 색인(없으면 LIKE)으로 계속한다.
+    private void abandon(Generation fresh) {
+        synchronized (changeLock) {
+            pending = null;
+        }
+        closeQuietly(fresh);
+    }
+
+    private void closeQuietly(Generation generation) {
+        if (generation == null) {
+            return;
+        }
+        try {
+            generation.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("failed to close username index", e);
+        }
+    }
+
+    private void afterCommit(Runnable task) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    private interface IndexChange {
+        void apply(IndexWriter writer) throws IOException;
+    }
+
+    //색인 한 벌. rebuild 는 새로 만든 Generation 으로 통째로 바꾼다.
+    private static class Generation implements Closeable {
+        private final Path dir;
+        private final Directory directory;
+        private final IndexWriter writer;
+        private final SearcherManager searcherManager;
+        //변경이 있을 때만 검색 직전에 reader 를 다시 연다.
+        private volatile boolean dirty;
+
+        Generation(Path dir, Directory directory, IndexWriter writer, SearcherManager searcherManager) {
+            this.dir = dir;
+            this.directory = directory;
+            this.writer = writer;
+            this.searcherManager = searcherManager;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOUtils.close(searcherManager, writer, directory);
+            if (dir != null) {
+                IOUtils.rm(dir);
+            }
+        }
+    }
+}
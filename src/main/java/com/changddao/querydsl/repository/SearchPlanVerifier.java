@@ -0,0 +1,108 @@
+package com.changddao.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.ResultSetMetaData;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+ * 기동 시 search() 의 조건 조합마다 실제 SQL 을 EXPLAIN 해서 테이블 풀 스캔이 나오는 조합을 찾는다.
+ * querydsl.search.explain-check = off | log | fail (fail 이면 기동을 멈춘다)
+ * MySQL 은 type = ALL, H2 는 plan 의 tableScan 이나 조건 없이 인덱스를 통째로 읽는 경우(PUBLIC.PRIMARY_KEY_8 뒤에 조건이 없음)를 풀 스캔으로 본다.
+ */
+@Slf4j
+@Component
+public class SearchPlanVerifier implements ApplicationRunner {
+    //H2 plan 에서 ':' 뒤 조건이 없는 인덱스 주석. "/* index sorted */" 같은 주석은 공백이 있어서 걸리지 않는다.
+    private static final Pattern H2_UNFILTERED_INDEX = Pattern.compile("/\\* [\\w\".]+ \\*/");
+
+    private final EntityManagerFactory emf;
+    private final MemberSearchQueryCache queryCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final String mode;
+
+    public SearchPlanVerifier(EntityManagerFactory emf, MemberSearchQueryCache queryCache, JdbcTemplate jdbcTemplate,
+                              @Value("${querydsl.search.explain-check:log}") String mode) {
+        this.emf = emf;
+        this.queryCache = queryCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.mode = mode;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if ("off".equalsIgnoreCase(mode)) {
+            return;
+        }
+        Map<String, String> fullScans = verify();
+        if (fullScans.isEmpty()) {
+            log.info("search plans verified, no full table scan");
+            return;
+        }
+        fullScans.forEach((shape, plan) -> log.warn("full table scan for search shape {}: {}", shape, plan));
+        if ("fail".equalsIgnoreCase(mode)) {
+            throw new IllegalStateException("full table scan for search shapes " + fullScans.keySet());
+        }
+    }
+
+    /*
+     * 풀 스캔이 나온 조건 조합 -> 실행 계획. 조건이 하나도 없는 조합은 원래 전체 조회이므로 빼고 본다.
+     */
+    public Map<String, String> verify() {
+        Map<String, String> fullScans = new LinkedHashMap<>();
+        EntityManager em = emf.createEntityManager();
+        try {
+            SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+            //조합은 MemberSearchQueryCache 의 조건 비트에서 만들므로 조건이 늘어나도 따로 손댈 것이 없다.
+            queryCache.sampleQueries(em).forEach((shape, sample) -> {
+                String[] sqls = sessionFactory.getQueryPlanCache()
+                        .getHQLQueryPlan(sample.jpql, false, Collections.emptyMap())
+                        .getSqlStrings();
+                String plan = explain(sqls[0], sample.args);
+                if (plan != null) {
+                    fullScans.put(shape, plan);
+                }
+            });
+        } finally {
+            em.close();
+        }
+        return fullScans;
+    }
+
+    private String explain(String sql, List<Object> args) {
+        return jdbcTemplate.query("explain " + sql, (ResultSetExtractor<String>) rs -> {
+            ResultSetMetaData meta = rs.getMetaData();
+            StringBuilder plan = new StringBuilder();
+            boolean fullScan = false;
+            while (rs.next()) {
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    String value = rs.getString(i);
+                    if (value == null) {
+                        continue;
+                    }
+                    if ("type".equalsIgnoreCase(meta.getColumnLabel(i)) && "ALL".equalsIgnoreCase(value)) {
+                        fullScan = true;
+                    }
+                    if (value.contains(".tableScan") || H2_UNFILTERED_INDEX.matcher(value).find()) {
+                        fullScan = true;
+                    }
+                    plan.append(meta.getColumnLabel(i)).append('=').append(value.replaceAll("\\s+", " ")).append(' ');
+                }
+            }
+            return fullScan ? plan.toString().trim() : null;
+        }, args.toArray());
+    }
+}
@@ -0,0 +1,24 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.entity.Team;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+import static org.hibernate.annotations.QueryHints.CACHE_REGION;
+
+public interface TeamRepository extends JpaRepository<Team, Long> {
+    String TEAM_IDS_REGION = "teamIdsByName";
+
+    @QueryHints({
+            @QueryHint(name = CACHEABLE, value = "true"),
+            @QueryHint(name = CACHE_REGION, value = TEAM_IDS_REGION)
+    })
+    @Query("select t.id from Team t where t.name = :name")
+    List<Long> findIdsByName(@Param("name") String name);
+}
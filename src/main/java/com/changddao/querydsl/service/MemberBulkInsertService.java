@@ -0,0 +1,136 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.repository.MemberDataVersion;
+import com.changddao.querydsl.repository.MemberReadModel;
+import com.changddao.querydsl.repository.MemberUsernameIndex;
+import lombok.Getter;
+import lombok.ToString;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class MemberBulkInsertService {
+    @PersistenceContext
+    private EntityManager em;
+
+    private final EntityManagerFactory emf;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberUsernameIndex usernameIndex;
+    private final MemberReadModel readModel;
+    private final MemberDataVersion dataVersion;
+
+    public MemberBulkInsertService(EntityManagerFactory emf, JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager, MemberUsernameIndex usernameIndex,
+                                   MemberReadModel readModel, MemberDataVersion dataVersion) {
+        this.emf = emf;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.usernameIndex = usernameIndex;
+        this.readModel = readModel;
+        this.dataVersion = dataVersion;
+    }
+
+    /*
+     * rowCount 건의 회원을 chunkSize 단위 트랜잭션으로 나눠서 넣는다.
+     * multiRow 가 true 면 JPA 를 거치지 않고 insert ... values (...), (...) 한 문장으로 chunk 를 넣는다.
+     */
+    public Report insertMembers(int rowCount, int chunkSize, boolean multiRow) {
+        long start = System.nanoTime();
+        List<Long> teamIds = transactionTemplate.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.flush();
+            return List.of(teamA.getId(), teamB.getId());
+        });
+
+        for (int offset = 0; offset < rowCount; offset += chunkSize) {
+            int from = offset;
+            int to = Math.min(offset + chunkSize, rowCount);
+            transactionTemplate.executeWithoutResult(status -> {
+                if (multiRow) {
+                    insertChunkMultiRow(from, to, teamIds);
+                } else {
+                    insertChunk(from, to, teamIds);
+                }
+            });
+        }
+
+        //연관관계 편의 메서드를 거치지 않았으므로 members 컬렉션 캐시를 비운다.
+        emf.unwrap(SessionFactoryImplementor.class).getCache()
+                .evictCollectionData(Team.class.getName() + ".members");
+        if (multiRow) {
+            //JDBC 로 넣은 회원은 Hibernate 이벤트가 없으므로 읽기 모델을 다시 읽고 변경 번호도 직접 올린다.
+            readModel.rebuildAfterCommit();
+            dataVersion.memberChangedAfterCommit();
+        }
+        return new Report(rowCount, System.nanoTime() - start);
+    }
+
+    private void insertChunk(int from, int to, List<Long> teamIds) {
+        for (int i = from; i < to; i++) {
+            Member member = new Member("member" + i, i % 100);
+            //team.members 컬렉션을 초기화하지 않도록 FK 만 세팅한다.
+            member.setTeam(em.getReference(Team.class, teamIds.get(i % teamIds.size())));
+            em.persist(member);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    private void insertChunkMultiRow(int from, int to, List<Long> teamIds) {
+        SharedSessionContractImplementor session = em.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator idGenerator = emf.unwrap(SessionFactoryImplementor.class).getMetamodel()
+                .entityPersister(Member.class).getIdentifierGenerator();
+
+        StringBuilder sql = new StringBuilder("insert into member (member_id, username, age, team_id) values ");
+        List<Object> args = new ArrayList<>((to - from) * 4);
+        Map<Long, String> usernames = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?, ?, ?)");
+            Long id = (Long) idGenerator.generate(session, null);
+            usernames.put(id, "member" + i);
+            args.add(id);
+            args.add("member" + i);
+            args.add(i % 100);
+            args.add(teamIds.get(i % teamIds.size()));
+        }
+        jdbcTemplate.update(sql.toString(), args.toArray());
+        //JDBC 로 넣었으므로 Hibernate 이벤트 대신 직접 username 색인에 반영한다.
+        usernameIndex.indexAfterCommit(usernames);
+    }
+
+    @Getter
+    @ToString
+    public static class Report {
+        private final int rows;
+        private final long elapsedMillis;
+        private final double rowsPerSecond;
+
+        Report(int rows, long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+            this.rowsPerSecond = elapsedNanos == 0 ? 0 : rows * 1_000_000_000d / elapsedNanos;
+        }
+    }
+}
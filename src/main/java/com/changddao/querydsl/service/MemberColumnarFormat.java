@@ -0,0 +1,223 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.repository.MemberRowHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * MemberTeamDto 목록을 JSON 대신 보내는 블록 단위 컬럼 형식. (application/x-member-columnar)
+ *
+ *   "MCOL" 1                                      헤더 (버전 1)
+ *   블록 반복:
+ *     rows                                        행 수 (0 이면 끝)
+ *     newTeams, (teamId, teamName) * newTeams     이 블록에서 처음 나온 팀 (사전에 순서대로 추가)
+ *     memberId * rows                             앞 행과의 차이 (블록을 넘어 이어진다)
+ *     age * rows
+ *     teamRef * rows                              0 이면 팀 없음, 아니면 사전 번호 + 1
+ *     username * rows
+ *
+ * 정수는 모두 zigzag varint, 문자열은 (UTF-8 길이 + 1) varint 뒤에 바이트 (길이 0 은 null).
+ * 행은 블록 크기만큼만 기본형 배열에 모았다가 쓰므로 전체 결과 크기와 상관없이 메모리 사용량이 일정하다.
+ */
+public final class MemberColumnarFormat {
+    public static final String MEDIA_TYPE = "application/x-member-columnar";
+
+    private static final byte[] MAGIC = {'M', 'C', 'O', 'L'};
+    private static final int VERSION = 1;
+    private static final int BLOCK_ROWS = 1024;
+
+    private MemberColumnarFormat() {
+    }
+
+    public static Writer writer(OutputStream out) {
+        return new Writer(out);
+    }
+
+    /*
+     * 테스트나 Java 클라이언트용. 전체를 MemberTeamDto 목록으로 읽는다.
+     */
+    public static List<MemberTeamDto> read(InputStream in) throws IOException {
+        byte[] magic = in.readNBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC) || readLong(in) != VERSION) {
+            throw new IOException("not a member columnar stream");
+        }
+        List<Long> teamIds = new ArrayList<>();
+        List<String> teamNames = new ArrayList<>();
+        List<MemberTeamDto> result = new ArrayList<>();
+        long lastId = 0;
+        int rows;
+        while ((rows = (int) readLong(in)) > 0) {
+            int newTeams = (int) readLong(in);
+            for (int i = 0; i < newTeams; i++) {
+                teamIds.add(readLong(in));
+                teamNames.add(readString(in));
+            }
+            long[] ids = new long[rows];
+            int[] ages = new int[rows];
+            int[] teamRefs = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                lastId += readLong(in);
+                ids[i] = lastId;
+            }
+            for (int i = 0; i < rows; i++) {
+                ages[i] = (int) readLong(in);
+            }
+            for (int i = 0; i < rows; i++) {
+                teamRefs[i] = (int) readLong(in);
+            }
+            for (int i = 0; i < rows; i++) {
+                int teamRef = teamRefs[i];
+                result.add(new MemberTeamDto(ids[i], readString(in), ages[i],
+                        teamRef == 0 ? null : teamIds.get(teamRef - 1),
+                        teamRef == 0 ? null : teamNames.get(teamRef - 1)));
+            }
+        }
+        return result;
+    }
+
+    public static class Writer implements MemberRowHandler {
+        private final OutputStream out;
+        private final long[] ids = new long[BLOCK_ROWS];
+        private final int[] ages = new int[BLOCK_ROWS];
+        private final int[] teamRefs = new int[BLOCK_ROWS];
+        private final String[] usernames = new String[BLOCK_ROWS];
+        private final Map<Long, Integer> teamDictionary = new HashMap<>();
+        private final List<Long> newTeamIds = new ArrayList<>();
+        private final List<String> newTeamNames = new ArrayList<>();
+        private int rows;
+        private long lastId;
+
+        private Writer(OutputStream out) {
+            this.out = new BufferedOutputStream(out, 64 * 1024);
+            try {
+                this.out.write(MAGIC);
+                writeLong(this.out, VERSION);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void row(long memberId, String username, int age, Long teamId, String teamName) {
+            ids[rows] = memberId;
+            ages[rows] = age;
+            usernames[rows] = username;
+            if (teamId == null) {
+                teamRefs[rows] = 0;
+            } else {
+                Integer teamRef = teamDictionary.get(teamId);
+                if (teamRef == null) {
+                    teamRef = teamDictionary.size() + 1;
+                    teamDictionary.put(teamId, teamRef);
+                    newTeamIds.add(teamId);
+                    newTeamNames.add(teamName);
+                }
+                teamRefs[rows] = teamRef;
+            }
+            if (++rows == BLOCK_ROWS) {
+                writeBlock();
+            }
+        }
+
+        //남은 블록과 끝 표시를 쓰고 flush 한다. 스트림은 닫지 않는다.
+        public void finish() {
+            if (rows > 0) {
+                writeBlock();
+            }
+            try {
+                writeLong(out, 0);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeBlock() {
+            try {
+                writeLong(out, rows);
+                writeLong(out, newTeamIds.size());
+                for (int i = 0; i < newTeamIds.size(); i++) {
+                    writeLong(out, newTeamIds.get(i));
+                    writeString(out, newTeamNames.get(i));
+                }
+                for (int i = 0; i < rows; i++) {
+                    writeLong(out, ids[i] - lastId);
+                    lastId = ids[i];
+                }
+                for (int i = 0; i < rows; i++) {
+                    writeLong(out, ages[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    writeLong(out, teamRefs[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    writeString(out, usernames[i]);
+                    usernames[i] = null;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            newTeamIds.clear();
+            newTeamNames.clear();
+            rows = 0;
+        }
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLong(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        int length = (int) readLong(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length - 1);
+        if (bytes.length != length - 1) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.repository.MemberReadModel;
+import com.changddao.querydsl.repository.MemberRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class MemberExportService {
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final MemberRepository memberRepository;
+    private final MemberReadModel memberReadModel;
+    private final ObjectMapper objectMapper;
+
+    @Value("${querydsl.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /*
+     * 조회 결과를 한 줄에 하나씩 JSON(NDJSON)으로 바로 써서
+     * 테이블 크기와 상관없이 힙 사용량이 일정하게 유지되도록 한다.
+     */
+    @Transactional(readOnly = true)
+    public long export(MemberSearchCondition condition, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(MemberTeamDto.class);
+        long count = 0;
+        try (Stream<MemberTeamDto> stream = memberRepository.searchStream(condition, fetchSize)) {
+            Iterator<MemberTeamDto> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(iterator.next()));
+                out.write(NEW_LINE);
+                if (++count % fetchSize == 0) {
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /*
+     * MemberColumnarFormat 으로 쓴다. /v1/members JSON 과 같은 소스(읽기 모델을 켰으면 읽기 모델, 아니면 DB)에서
+     * 같은 순서(member.id)로 읽는다. DB 에서는 행을 DTO 로 만들지 않고 조회 결과의 컬럼 값을 바로 블록에 모아 쓴다.
+     */
+    public long exportColumnar(MemberSearchCondition condition, OutputStream out) throws IOException {
+        MemberColumnarFormat.Writer writer = MemberColumnarFormat.writer(out);
+        try {
+            long count;
+            if (memberReadModel.isReady()) {
+                List<MemberTeamDto> members = memberReadModel.search(condition);
+                for (MemberTeamDto dto : members) {
+                    writer.row(dto.getMemberId(), dto.getUsername(), dto.getAge(), dto.getTeamId(), dto.getTeamName());
+                }
+                count = members.size();
+            } else {
+                count = memberRepository.forEachRow(condition, fetchSize, writer);
+            }
+            writer.finish();
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
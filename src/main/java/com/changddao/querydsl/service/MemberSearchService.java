@@ -0,0 +1,92 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.repository.MemberRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+ * 조회를 queryExecutor 에서 실행하고 CompletableFuture 로 돌려준다.
+ * 페이지 조회는 내용과 count 를 서로 다른 스레드/커넥션에서 동시에 실행한다.
+ * 풀과 큐가 가득 차면 RejectedExecutionException 이 그대로 던져진다.
+ * (페이지 조회에서 count 만 거절되면 count 는 요청 스레드에서 실행한다)
+ *
+ * searchPageComplex 는 같은 조건/페이지로 동시에 들어온 요청을 하나로 합쳐서 내용/count 쿼리를 한 번만 실행한다.
+ */
+@Service
+public class MemberSearchService implements MeterBinder {
+    private final MemberRepository memberRepository;
+    private final Executor queryExecutor;
+    private final boolean coalesce;
+    private final SingleFlight<List<Object>, Page<MemberTeamDto>> pageFlight;
+
+    public MemberSearchService(MemberRepository memberRepository, @Qualifier("queryExecutor") Executor queryExecutor,
+                               @Value("${querydsl.search.coalesce.enabled:true}") boolean coalesce,
+                               @Value("${querydsl.search.coalesce.max-wait-ms:2000}") long coalesceMaxWaitMillis) {
+        this.memberRepository = memberRepository;
+        this.queryExecutor = queryExecutor;
+        this.coalesce = coalesce;
+        this.pageFlight = new SingleFlight<>(coalesceMaxWaitMillis);
+    }
+
+    public CompletableFuture<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        return CompletableFuture.supplyAsync(() -> memberRepository.search(condition), queryExecutor);
+    }
+
+    public CompletableFuture<Page<MemberTeamDto>> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        CompletableFuture<List<MemberTeamDto>> content =
+                CompletableFuture.supplyAsync(() -> memberRepository.searchContent(condition, pageable), queryExecutor);
+        CompletableFuture<Long> count;
+        try {
+            count = CompletableFuture.supplyAsync(() -> memberRepository.searchCount(condition), queryExecutor);
+        } catch (RejectedExecutionException e) {
+            //내용 조회는 이미 넘어갔으므로 버리지 않고 count 만 요청 스레드에서 실행한다.
+            try {
+                count = CompletableFuture.completedFuture(memberRepository.searchCount(condition));
+            } catch (RuntimeException countFailure) {
+                //아직 큐에 있으면 실행되지 않는다.
+                content.cancel(false);
+                throw countFailure;
+            }
+        }
+        return content.thenCombine(count, (list, total) -> PageableExecutionUtils.getPage(list, pageable, () -> total));
+    }
+
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, boolean exactCount) {
+        if (!coalesce) {
+            return memberRepository.searchPageComplex(condition, pageable, exactCount);
+        }
+        //MemberSearchCondition 은 변경 가능하므로 값만 복사해서 키로 쓴다.
+        List<Object> key = Arrays.asList(condition.getUsername(), condition.getUsernamePrefix(),
+                condition.getUsernameContains(), condition.getTeamName(), condition.getAgeGoe(), condition.getAgeLoe(),
+                pageable, exactCount);
+        return pageFlight.execute(key, () -> memberRepository.searchPageComplex(condition, pageable, exactCount));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("querydsl.search.coalesce", pageFlight, SingleFlight::getLeaderCount)
+                .tag("result", "leader")
+                .register(registry);
+        FunctionCounter.builder("querydsl.search.coalesce", pageFlight, SingleFlight::getCoalescedCount)
+                .tag("result", "coalesced")
+                .register(registry);
+        FunctionCounter.builder("querydsl.search.coalesce", pageFlight, SingleFlight::getTimeoutCount)
+                .tag("result", "timeout")
+                .register(registry);
+    }
+}
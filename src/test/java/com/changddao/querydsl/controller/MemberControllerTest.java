@@ -0,0 +1,216 @@
+package com.changddao.querydsl.controller;
+
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.repository.MemberDataVersion;
+import com.changddao.querydsl.service.MemberColumnarFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+//응답 캐시는 커밋된 변경으로만 무효화되므로 테스트 데이터를 커밋하고 끝나면 지운다.
+@SpringBootTest(properties = "querydsl.search.response-cache.enabled=true")
+@AutoConfigureMockMvc
+class MemberControllerTest {
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            em.persist(new Member("member1", 10, teamA));
+            em.persist(new Member("member2", 20, teamA));
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void conditionalGet() throws Exception {
+        String etag = mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(2))
+                .andReturn().getResponse().getHeader("ETag");
+        assertThat(etag).isNotNull();
+
+        mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "10")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        //회원이 바뀌면 ETag 가 바뀌고 새 내용을 돌려준다.
+        transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("member3", 30, em.createQuery("select t from Team t", Team.class)
+                        .getSingleResult())));
+        mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "10")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$.totalElements").value(3));
+    }
+
+    @Test
+    public void etagFromPreviousProcessIsNotMatched() throws Exception {
+        String etag = mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        //재시작한 프로세스(또는 다른 인스턴스)가 같은 변경 번호로 만든 ETag
+        String counters = etag.substring(etag.indexOf(':') + 1, etag.length() - 1);
+        String restarted = new MemberDataVersion(null).current();
+        String staleEtag = "\"" + restarted.substring(0, restarted.indexOf(':') + 1) + counters + "\"";
+        assertThat(staleEtag).isNotEqualTo(etag);
+
+        mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "10")
+                        .header("If-None-Match", staleEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+    }
+
+    @Test
+    public void blankConditionSharesCachedResponse() throws Exception {
+        String body = mockMvc.perform(get("/v1/members"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("member1")))
+                .andReturn().getResponse().getContentAsString();
+
+        double hits = cacheHits();
+
+        mockMvc.perform(get("/v1/members").param("username", " "))
+                .andExpect(status().isOk())
+                .andExpect(content().string(body));
+        assertThat(cacheHits()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void batchSearch() throws Exception {
+        mockMvc.perform(post("/members/batch-search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"username\":\"member2\"},{\"teamName\":\"teamA\",\"ageLoe\":15},{\"username\":\"nobody\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0][0].username").value("member2"))
+                .andExpect(jsonPath("$[1][0].username").value("member1"))
+                .andExpect(jsonPath("$[1].length()").value(1))
+                .andExpect(jsonPath("$[2].length()").value(0));
+
+        mockMvc.perform(post("/members/batch-search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"username\":\"member2\"},null]"))
+                .andExpect(status().isBadRequest());
+
+        String tooMany = "[" + String.join(",", Collections.nCopies(101, "{}")) + "]";
+        mockMvc.perform(post("/members/batch-search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(tooMany))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void columnarResponse() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("loner", 15, null));
+            em.persist(new Member("member0", 5, em.createQuery("select t from Team t", Team.class).getSingleResult()));
+        });
+
+        MvcResult columnar = mockMvc.perform(get("/v1/members").param("ageLoe", "30")
+                        .accept(MemberColumnarFormat.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MemberColumnarFormat.MEDIA_TYPE))
+                .andReturn();
+        MvcResult jsonResult = mockMvc.perform(get("/v1/members").param("ageLoe", "30"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        String json = jsonResult.getResponse().getContentAsString();
+
+        //두 형식은 같은 행을 같은 순서로 돌려준다.
+        List<MemberTeamDto> fromJson = objectMapper.readValue(json, new TypeReference<List<MemberTeamDto>>() {
+        });
+        List<MemberTeamDto> fromColumnar = MemberColumnarFormat.read(
+                new ByteArrayInputStream(columnar.getResponse().getContentAsByteArray()));
+        assertThat(fromColumnar).containsExactlyElementsOf(fromJson);
+        assertThat(fromColumnar).extracting("username")
+                .containsExactly("member1", "member2", "loner", "member0");
+
+        //같은 응답 캐시를 쓰지만 형식마다 ETag 가 다르고 Accept 로 나뉜다는 것을 알린다.
+        String etag = columnar.getResponse().getHeader("ETag");
+        String jsonEtag = jsonResult.getResponse().getHeader("ETag");
+        assertThat(etag).isNotNull().isNotEqualTo(jsonEtag);
+        assertThat(columnar.getResponse().getHeaders("Vary")).contains("Accept");
+        assertThat(jsonResult.getResponse().getHeaders("Vary")).contains("Accept");
+        mockMvc.perform(get("/v1/members").param("ageLoe", "30")
+                        .accept(MemberColumnarFormat.MEDIA_TYPE)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().stringValues("Vary", hasItem("Accept")));
+        //다른 형식의 ETag 로는 304 가 나오지 않는다.
+        mockMvc.perform(get("/v1/members").param("ageLoe", "30")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", jsonEtag));
+    }
+
+    @Test
+    public void cursorSizeValidated() throws Exception {
+        mockMvc.perform(get("/v4/members").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+
+        for (String size : new String[]{"0", "-1", "1001"}) {
+            mockMvc.perform(get("/v4/members").param("size", size))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    private double cacheHits() {
+        return meterRegistry.get("cache.gets")
+                .tags("cache", "querydsl.search.response", "result", "hit")
+                .functionCounter()
+                .count();
+    }
+}
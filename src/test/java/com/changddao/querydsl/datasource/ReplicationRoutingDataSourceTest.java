@@ -0,0 +1,119 @@
+package com.changddao.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/*
+ * primary/replica 를 서로 다른 H2 메모리 DB 로 띄우고 어느 쪽으로 나갔는지 DB 이름으로 확인한다.
+ * replica 에는 스키마가 없으므로 기동 중에 readOnly 트랜잭션으로 테이블을 읽는 작업이 있으면 컨텍스트가 뜨지 않는다.
+ */
+@SpringBootTest(properties = {
+        "querydsl.datasource.replica.enabled=true",
+        "querydsl.datasource.replica.url=jdbc:h2:mem:replica;MODE=MySQL",
+        "spring.datasource.hikari.maximum-pool-size=7",
+        "spring.datasource.hikari.connection-timeout=4000",
+        "querydsl.datasource.replica.hikari.maximum-pool-size=3",
+})
+class ReplicationRoutingDataSourceTest {
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    DataSource dataSource;
+
+    @AfterEach
+    public void after() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void readOnlyTransactionToReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        String readOnlyDatabase = readOnly.execute(status -> databaseName(jdbcTemplate));
+        String readWriteDatabase = readWrite.execute(status -> databaseName(jdbcTemplate));
+
+        assertThat(readOnlyDatabase).isEqualTo("REPLICA");
+        assertThat(readWriteDatabase).isNotEqualTo("REPLICA");
+    }
+
+    @Test
+    public void contextStartsWithSchemaLessReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        String countMemberTable = "select count(*) from information_schema.tables where table_name = 'MEMBER'";
+
+        Long onReplica = readOnly.execute(status -> jdbcTemplate.queryForObject(countMemberTable, Long.class));
+        Long onPrimary = readWrite.execute(status -> jdbcTemplate.queryForObject(countMemberTable, Long.class));
+
+        assertThat(onReplica).isZero();
+        assertThat(onPrimary).isEqualTo(1L);
+    }
+
+    @Test
+    public void poolsUseHikariProperties() throws Exception {
+        Map<Object, DataSource> pools = dataSource.unwrap(ReplicationRoutingDataSource.class).getResolvedDataSources();
+        HikariDataSource primary = (HikariDataSource) pools.get(ReplicationRoutingDataSource.PRIMARY);
+        HikariDataSource replica = (HikariDataSource) pools.get(ReplicationRoutingDataSource.REPLICA);
+
+        assertThat(primary.getMaximumPoolSize()).isEqualTo(7);
+        assertThat(primary.getConnectionTimeout()).isEqualTo(4000);
+        assertThat(primary.getPoolName()).isEqualTo("primary");
+        //replica 는 spring.datasource.hikari.* 를 따르고 replica 설정으로 덮어쓴다.
+        assertThat(replica.getMaximumPoolSize()).isEqualTo(3);
+        assertThat(replica.getConnectionTimeout()).isEqualTo(4000);
+        assertThat(replica.isReadOnly()).isTrue();
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary() {
+        DataSource replica = h2("lagging");
+        ReplicaLagChecker lagChecker = new ReplicaLagChecker(replica, "select 100", 5, 60_000);
+        ReplicationRoutingDataSource routing = routing(replica, lagChecker);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(databaseName(new JdbcTemplate(routing))).isEqualTo("PRIMARY");
+    }
+
+    @Test
+    public void unreachableReplicaFallsBackToPrimary() {
+        DataSource replica = h2("missing;IFEXISTS=TRUE");
+        ReplicaLagChecker lagChecker = new ReplicaLagChecker(replica, "", 5, 60_000);
+        ReplicationRoutingDataSource routing = routing(replica, lagChecker);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(databaseName(new JdbcTemplate(routing))).isEqualTo("PRIMARY");
+        assertThat(lagChecker.isAvailable()).isFalse();
+    }
+
+    private ReplicationRoutingDataSource routing(DataSource replica, ReplicaLagChecker lagChecker) {
+        ReplicationRoutingDataSource routing = new ReplicationRoutingDataSource(h2("primary"), replica, lagChecker);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    private DataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name, "sa", "");
+    }
+
+    private String databaseName(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("select database()", String.class);
+    }
+}
@@ -0,0 +1,54 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+//offset 10 부터 deferred join 으로 바뀐다.
+@SpringBootTest(properties = "querydsl.search.deferred-join-offset=10")
+@Transactional
+class MemberDeferredJoinTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Test
+    public void pagesAcrossThreshold() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        //id 순서와 나이 순서가 다르게 넣는다.
+        for (int i = 0; i < 23; i++) {
+            em.persist(new Member("member" + i, (i * 7) % 23, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(2);
+        List<MemberTeamDto> all = memberRepository.search(memberSearchCondition);
+
+        List<MemberTeamDto> paged = new ArrayList<>();
+        for (int page = 0; page * 4 < all.size(); page++) {
+            paged.addAll(memberRepository.searchPageComplex(memberSearchCondition, PageRequest.of(page, 4)).getContent());
+        }
+
+        assertThat(paged).hasSize(all.size());
+        assertThat(paged).doesNotHaveDuplicates();
+        assertThat(paged).containsExactlyElementsOf(all);
+    }
+}
@@ -4,6 +4,7 @@ import com.changddao.querydsl.dto.MemberSearchCondition;
 import com.changddao.querydsl.dto.MemberTeamDto;
 import com.changddao.querydsl.entity.Member;
 import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.metrics.QueryStatementListener;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +24,10 @@ class MemberJpaRepositoryTest {
     private EntityManager em;
     @Autowired
     private MemberJpaRepository memberJpaRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private QueryStatementListener statementListener;
 
 
 
@@ -53,4 +58,69 @@ class MemberJpaRepositoryTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void fetchPlanWithTeam() {
+        saveMembers();
+
+        long before = statementListener.getStatementCount();
+        List<Member> result = memberJpaRepository.findAll_Querydsl(FetchPlan.WITH_TEAM);
+        result.forEach(m -> m.getTeam().getName());
+
+        //회원 조회 한 번에 팀까지 같이 읽는다.
+        assertThat(statementListener.getStatementCount() - before).isEqualTo(1);
+        assertThat(result).extracting("team.name")
+                .containsExactlyInAnyOrder("teamA", "teamA", "teamB", "teamB");
+    }
+
+    @Test
+    public void defaultBatchFetchSize() {
+        saveMembers();
+
+        long before = statementListener.getStatementCount();
+        List<Member> result = memberRepository.findAll(FetchPlan.DEFAULT);
+        result.forEach(m -> m.getTeam().getName());
+
+        //팀 프록시 두 개는 in 절 한 번으로 초기화된다.
+        assertThat(statementListener.getStatementCount() - before).isEqualTo(2);
+    }
+
+    @Test
+    public void readOnlyEntities() {
+        saveMembers();
+
+        List<Member> result = memberJpaRepository.findByUsername_Querydsl("member1");
+        Member findMember = result.get(0);
+        findMember.setAge(99);
+        em.flush();
+        em.clear();
+
+        //읽기 전용으로 읽은 엔티티는 스냅샷이 없어서 변경 감지가 되지 않는다.
+        assertThat(memberJpaRepository.findById(findMember.getId()).get().getAge()).isEqualTo(10);
+    }
+
+    @Test
+    public void jpqlFindKeepsDirtyChecking() {
+        saveMembers();
+
+        Member findMember = memberJpaRepository.findByUsername("member1").get(0);
+        findMember.setAge(99);
+        em.flush();
+        em.clear();
+
+        assertThat(memberJpaRepository.findById(findMember.getId()).get().getAge()).isEqualTo(99);
+    }
+
+    private void saveMembers() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 40, teamB));
+        em.persist(new Member("member4", 50, teamB));
+        em.flush();
+        em.clear();
+    }
+
+}
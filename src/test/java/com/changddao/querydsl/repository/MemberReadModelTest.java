@@ -0,0 +1,267 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.service.MemberColumnarFormat;
+import com.changddao.querydsl.service.MemberExportService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+//읽기 모델은 커밋된 변경만 반영하므로 테스트 데이터를 커밋하고 끝나면 지운다.
+@SpringBootTest(properties = "querydsl.search.read-model.enabled=true")
+class MemberReadModelTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberReadModel readModel;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    MemberExportService memberExportService;
+
+    TransactionTemplate transactionTemplate;
+    Long teamAId;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 20; i++) {
+                em.persist(new Member("member" + i, i * 5, i % 2 == 0 ? teamA : teamB));
+            }
+            em.persist(new Member("Alice", 30, null));
+            teamAId = teamA.getId();
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+        readModel.rebuild();
+    }
+
+    @Test
+    public void sameResultAsDatabase() {
+        MemberSearchCondition teamAndAge = new MemberSearchCondition();
+        teamAndAge.setTeamName("teamB");
+        teamAndAge.setAgeGoe(20);
+        teamAndAge.setAgeLoe(70);
+        MemberSearchCondition username = new MemberSearchCondition();
+        username.setUsername("member3");
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("ali");
+
+        for (MemberSearchCondition condition : List.of(new MemberSearchCondition(), teamAndAge, username, prefix)) {
+            List<MemberTeamDto> expected = memberRepository.search(condition);
+            expected.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+            assertThat(readModel.search(condition)).containsExactlyElementsOf(expected);
+        }
+
+        Page<MemberTeamDto> page = readModel.searchPage(teamAndAge, PageRequest.of(1, 3));
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).extracting("username")
+                .containsExactly("member11", "member13");
+    }
+
+    @Test
+    public void usernameMatchFollowsDatabaseCollation() {
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("member1");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("ber1");
+        MemberSearchCondition shortContains = new MemberSearchCondition();
+        shortContains.setUsernameContains("r1");
+        MemberSearchCondition prefixAndContains = new MemberSearchCondition();
+        prefixAndContains.setUsernamePrefix("Al");
+        prefixAndContains.setUsernameContains("ice");
+
+        for (MemberSearchCondition condition : List.of(prefix, contains, shortContains, prefixAndContains)) {
+            List<MemberTeamDto> expected = memberRepository.search(condition);
+            assertThat(expected).isNotEmpty();
+            assertThat(readModel.search(condition)).containsExactlyElementsOf(expected);
+        }
+
+        //테스트 DB 는 대소문자를 구분하므로 읽기 모델도 구분한다. 구분하지 않는 collation 이면 설정으로 맞춘다.
+        MemberSearchCondition upper = new MemberSearchCondition();
+        upper.setUsername("ALICE");
+        MemberSearchCondition upperPrefix = new MemberSearchCondition();
+        upperPrefix.setUsernamePrefix("MEMBER1");
+        MemberSearchCondition upperContains = new MemberSearchCondition();
+        upperContains.setUsernameContains("LIC");
+        for (MemberSearchCondition condition : List.of(upper, upperPrefix, upperContains)) {
+            assertThat(memberRepository.search(condition)).isEmpty();
+            assertThat(readModel.search(condition)).isEmpty();
+        }
+        MemberReadModel ignoreCase = new MemberReadModel(emf, true, true);
+        ignoreCase.rebuild();
+        assertThat(ignoreCase.search(upper)).extracting("username").containsExactly("Alice");
+        assertThat(ignoreCase.search(upperPrefix)).hasSize(11);
+        assertThat(ignoreCase.search(upperContains)).extracting("username").containsExactly("Alice");
+    }
+
+    @Test
+    public void usernameDictionaryIsCompacted() {
+        assertThat(readModel.usernameDictionarySize()).isEqualTo(21);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Member member : em.createQuery("select m from Member m where m.age >= 25", Member.class)
+                    .getResultList()) {
+                em.remove(member);
+            }
+        });
+
+        //지워진 슬롯이 절반을 넘을 때 사전도 다시 만들므로 지워진 username 이 계속 쌓이지 않는다.
+        assertThat(readModel.count(new MemberSearchCondition())).isEqualTo(5);
+        assertThat(readModel.usernameDictionarySize()).isLessThanOrEqualTo(10);
+        readModel.rebuild();
+        assertThat(readModel.usernameDictionarySize()).isEqualTo(5);
+        MemberSearchCondition removed = new MemberSearchCondition();
+        removed.setUsernamePrefix("member1");
+        assertThat(readModel.search(removed)).extracting("username").containsExactly("member1");
+    }
+
+    @Test
+    public void columnarExportUsesReadModel() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(20);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        memberExportService.exportColumnar(condition, out);
+
+        assertThat(MemberColumnarFormat.read(new ByteArrayInputStream(out.toByteArray())))
+                .containsExactlyElementsOf(readModel.search(condition));
+    }
+
+    @Test
+    public void incrementalSync() {
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("teamA");
+        assertThat(readModel.count(teamA)).isEqualTo(10);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = em.find(Team.class, teamAId);
+            team.setName("teamC");
+            em.persist(new Member("newbie", 1, team));
+            Member member0 = memberRepository.findByUsername("member0").get(0);
+            em.remove(em.contains(member0) ? member0 : em.merge(member0));
+        });
+        MemberSearchCondition teamC = new MemberSearchCondition();
+        teamC.setTeamName("teamC");
+        assertThat(readModel.count(teamA)).isEqualTo(0);
+        assertThat(readModel.search(teamC)).extracting("username")
+                .hasSize(10)
+                .contains("newbie")
+                .doesNotContain("member0");
+
+        //롤백된 변경은 반영되지 않는다.
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("ghost", 1, em.find(Team.class, teamAId)));
+            status.setRollbackOnly();
+        });
+        assertThat(readModel.count(teamC)).isEqualTo(10);
+
+        //벌크 연산은 커밋 후 다시 읽는다.
+        MemberSearchCondition young = new MemberSearchCondition();
+        young.setAgeLoe(10);
+        memberRepository.bulkIncrementAge(young);
+        young.setAgeLoe(1);
+        assertThat(readModel.search(young)).isEmpty();
+    }
+
+    @Test
+    public void notReadyUntilLoaded() {
+        MemberReadModel notLoaded = new MemberReadModel(emf, true, false);
+        assertThat(notLoaded.isReady()).isFalse();
+        notLoaded.rebuild();
+        assertThat(notLoaded.isReady()).isTrue();
+        assertThat(notLoaded.count(new MemberSearchCondition())).isEqualTo(21);
+    }
+
+    @Test
+    public void concurrentRebuildsAfterCommit() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String username = "concurrent" + i;
+                //벌크 연산처럼 커밋 후 rebuild 를 요청한다. 동시에 돌아도 예외 없이 모든 변경이 남아야 한다.
+                writes.add(executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                    em.persist(new Member(username, 50, null));
+                    readModel.rebuildAfterCommit();
+                })));
+            }
+            for (Future<?> write : writes) {
+                write.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        MemberSearchCondition concurrent = new MemberSearchCondition();
+        concurrent.setUsernamePrefix("concurrent");
+        assertThat(readModel.isReady()).isTrue();
+        assertThat(readModel.count(new MemberSearchCondition())).isEqualTo(29);
+        assertThat(readModel.search(concurrent)).hasSize(8);
+    }
+
+    @Test
+    public void indexedPage() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(60);
+
+        Page<MemberTeamDto> page = memberRepository.searchPageIndexed(condition, PageRequest.of(1, 2));
+        assertThat(page.getTotalElements()).isEqualTo(6);
+        assertThat(page.getContent()).containsExactlyElementsOf(
+                readModel.searchPage(condition, PageRequest.of(1, 2)).getContent());
+        assertThat(page.getContent()).extracting("username")
+                .containsExactly("member6", "member8");
+
+        //나이/팀이 바뀌면 비트맵도 옮겨진다.
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member4 = memberRepository.findByUsername("member4").get(0);
+            member4.setAge(99);
+            Member member3 = memberRepository.findByUsername("member3").get(0);
+            member3.setTeam(em.find(Team.class, teamAId));
+        });
+        assertThat(memberRepository.searchPageIndexed(condition, PageRequest.of(0, 10)).getContent())
+                .extracting("username")
+                .containsExactly("member2", "member3", "member6", "member8", "member10", "member12");
+    }
+}
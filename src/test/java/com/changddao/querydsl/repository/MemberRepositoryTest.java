@@ -4,16 +4,29 @@ import com.changddao.querydsl.dto.MemberSearchCondition;
 import com.changddao.querydsl.dto.MemberTeamDto;
 import com.changddao.querydsl.entity.Member;
 import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.metrics.QueryStatementListener;
+import com.changddao.querydsl.service.MemberColumnarFormat;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,6 +37,14 @@ class MemberRepositoryTest {
     EntityManager em;
     @Autowired
     MemberRepository memberRepository;
+    @Autowired
+    MemberSearchQueryCache queryCache;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    SearchPlanVerifier searchPlanVerifier;
+    @Autowired
+    QueryStatementListener statementListener;
 
     @Test
     public void basicTest() {
@@ -95,5 +116,363 @@ class MemberRepositoryTest {
 
     }
 
+    @Test
+    public void searchPageComplex() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 40, teamB));
+        em.persist(new Member("member4", 50, teamB));
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setTeamName("teamB");
+
+        //첫 페이지가 덜 찬 경우 count 쿼리 없이 total 이 계산된다.
+        Page<MemberTeamDto> result = memberRepository.searchPageComplex(memberSearchCondition, PageRequest.of(0, 3));
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).extracting("username")
+                .containsExactly("member3", "member4");
+
+        Page<MemberTeamDto> all = memberRepository.searchPageComplex(new MemberSearchCondition(), PageRequest.of(0, 3));
+        assertThat(all.getTotalElements()).isEqualTo(4);
+        assertThat(all.getTotalPages()).isEqualTo(2);
+    }
+
+    @Test
+    public void searchPageEstimatedCount() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("member" + i, 15 + i, teamA));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(15);
+
+        Page<MemberTeamDto> first = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), false);
+        em.persist(new Member("member5", 20, teamA));
+        em.persist(new Member("member6", 21, teamA));
+        Page<MemberTeamDto> second = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), false);
+
+        //같은 조건의 count 는 TTL 동안 캐시된 값을 쓴다.
+        assertThat(((EstimatedPage<MemberTeamDto>) first).isTotalExact()).isFalse();
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        assertThat(second.getTotalElements()).isEqualTo(5);
+        assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 2)).getTotalElements()).isEqualTo(7);
+    }
+
+    @Test
+    public void searchSlice() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 40, teamA));
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(new MemberSearchCondition(), PageRequest.of(0, 2));
+        assertThat(first.getContent()).extracting("username")
+                .containsExactly("member1", "member2");
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(new MemberSearchCondition(), PageRequest.of(1, 2));
+        assertThat(last.getContent()).extracting("username")
+                .containsExactly("member3");
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test
+    public void searchAfter() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 40, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        List<MemberTeamDto> first = memberRepository.searchAfter(memberSearchCondition, null, 2);
+        assertThat(first).extracting("username")
+                .containsExactly("member1", "member2");
+
+        Long lastMemberId = first.get(first.size() - 1).getMemberId();
+        List<MemberTeamDto> next = memberRepository.searchAfter(memberSearchCondition, lastMemberId, 2);
+        assertThat(next).extracting("username")
+                .containsExactly("member3");
+    }
+
+    @Test
+    public void searchQueryCache() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 40, teamB));
+        em.persist(new Member("member4", 50, teamB));
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(15);
+        memberSearchCondition.setAgeLoe(45);
+        memberRepository.search(memberSearchCondition);
+
+        //같은 조건 조합이면 값이 달라도 직렬화된 JPQL 을 재사용한다.
+        long hitCount = queryCache.getHitCount();
+        memberSearchCondition.setAgeGoe(35);
+        memberSearchCondition.setAgeLoe(55);
+        List<MemberTeamDto> result = memberRepository.search(memberSearchCondition);
+
+        assertThat(queryCache.getHitCount()).isEqualTo(hitCount + 1);
+        assertThat(result).extracting("username")
+                .containsExactly("member3", "member4");
+    }
+
+    @Test
+    public void searchStream() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 40, teamB));
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(20);
+
+        try (Stream<MemberTeamDto> stream = memberRepository.searchStream(memberSearchCondition, 100)) {
+            List<String> usernames = stream.map(MemberTeamDto::getUsername)
+                    .collect(Collectors.toList());
+            assertThat(usernames).containsExactly("member2", "member3");
+        }
+    }
+
+    @Test
+    public void bulkIncrementAge() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
 
-}
\ No newline at end of file
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setTeamName("teamA");
+        long count = memberRepository.bulkIncrementAge(memberSearchCondition);
+
+        //조건에 걸린 엔티티만 영속성 컨텍스트에서 빠진다.
+        assertThat(count).isEqualTo(2);
+        assertThat(em.contains(member1)).isFalse();
+        assertThat(em.contains(member3)).isTrue();
+        assertThat(memberRepository.findById(member1.getId()).get().getAge()).isEqualTo(11);
+        assertThat(memberRepository.findById(member3.getId()).get().getAge()).isEqualTo(40);
+    }
+
+    @Test
+    public void bulkRenameAndDeleteByChunk() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(50);
+        assertThat(memberRepository.bulkRename(memberSearchCondition, "비회원", 3)).isEqualTo(5);
+        assertThat(memberRepository.findByUsername("비회원")).hasSize(5);
+
+        assertThat(memberRepository.bulkDelete(memberSearchCondition, 3)).isEqualTo(5);
+        assertThat(memberRepository.count()).isEqualTo(5);
+    }
+
+    @Test
+    public void searchAllMergesConditions() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + i, i * 10, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        for (String username : List.of("member1", "member2", "member1", "nobody")) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername(username);
+            conditions.add(condition);
+        }
+        MemberSearchCondition teamAOld = new MemberSearchCondition();
+        teamAOld.setTeamName("teamA");
+        teamAOld.setAgeGoe(40);
+        conditions.add(teamAOld);
+        MemberSearchCondition teamBYoung = new MemberSearchCondition();
+        teamBYoung.setTeamName("teamB");
+        teamBYoung.setAgeGoe(10);
+        conditions.add(teamBYoung);
+
+        long before = statementListener.getStatementCount();
+        List<List<MemberTeamDto>> results = memberRepository.searchAll(conditions);
+
+        //username 조건 4개, 팀+나이 조건 2개가 각각 쿼리 하나로 묶인다.
+        assertThat(statementListener.getStatementCount() - before).isEqualTo(2);
+        assertThat(results).hasSize(6);
+        for (int i = 0; i < conditions.size(); i++) {
+            List<MemberTeamDto> expected = memberRepository.search(conditions.get(i));
+            expected.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+            assertThat(results.get(i)).containsExactlyElementsOf(expected);
+        }
+        assertThat(results.get(3)).isEmpty();
+        assertThat(results.get(4)).extracting("username")
+                .containsExactly("member4", "member6", "member8");
+    }
+
+    @Test
+    public void searchAllKeepsAgeRangesApart() {
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + i, i * 10));
+        }
+        em.flush();
+
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        for (int[] range : new int[][]{{0, 10}, {80, 90}, {5, 20}}) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setAgeGoe(range[0]);
+            condition.setAgeLoe(range[1]);
+            conditions.add(condition);
+        }
+
+        //[0,10] 과 [5,20] 은 합치고 [80,90] 은 따로 둔다. (0~90 전체를 읽지 않는다)
+        assertThat(MemberRepositoryImpl.ageRanges(conditions).toString())
+                .isEqualTo("member1.age >= 0 && member1.age <= 20 || member1.age >= 80 && member1.age <= 90");
+
+        List<List<MemberTeamDto>> results = memberRepository.searchAll(conditions);
+        assertThat(results.get(0)).extracting("username").containsExactly("member0", "member1");
+        assertThat(results.get(1)).extracting("username").containsExactly("member8", "member9");
+        assertThat(results.get(2)).extracting("username").containsExactly("member1", "member2");
+    }
+
+    @Test
+    public void deferredJoinPage() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 30; i++) {
+            em.persist(new Member("member" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setTeamName("teamA");
+        memberSearchCondition.setAgeGoe(5);
+        List<MemberTeamDto> all = queryCache.fetch(em, memberSearchCondition);
+        all.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+
+        List<MemberTeamDto> page = queryCache.fetchDeferred(em, memberSearchCondition, 4, 3);
+
+        assertThat(page).containsExactlyElementsOf(all.subList(4, 7));
+        assertThat(page).extracting("username")
+                .containsExactly("member14", "member16", "member18");
+        assertThat(queryCache.fetchDeferred(em, memberSearchCondition, 100, 3)).isEmpty();
+    }
+
+    @Test
+    public void columnarRoundTrip() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("팀B");
+        em.persist(teamA);
+        em.persist(teamB);
+        //블록(1024행)을 여러 개 넘기고 팀이 없는 회원도 섞는다.
+        for (int i = 0; i < 2500; i++) {
+            em.persist(new Member("member" + i, i % 60, i % 7 == 0 ? null : i % 2 == 0 ? teamA : teamB));
+        }
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(10);
+        List<MemberTeamDto> expected = memberRepository.search(memberSearchCondition);
+        expected.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemberColumnarFormat.Writer writer = MemberColumnarFormat.writer(out);
+        long count = memberRepository.forEachRow(memberSearchCondition, 500, writer);
+        writer.finish();
+
+        assertThat(count).isEqualTo(expected.size());
+        assertThat(MemberColumnarFormat.read(new ByteArrayInputStream(out.toByteArray())))
+                .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void forEachBatchFillsBuffer() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 25; i++) {
+            em.persist(new Member("member" + i, i, i % 5 == 0 ? null : teamA));
+        }
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(3);
+        List<MemberTeamDto> expected = memberRepository.search(memberSearchCondition);
+
+        MemberTeamRowBuffer buffer = new MemberTeamRowBuffer(10);
+        List<Integer> batchSizes = new ArrayList<>();
+        List<MemberTeamDto> result = new ArrayList<>();
+        long count = memberRepository.forEachBatch(memberSearchCondition, buffer, rows -> {
+            batchSizes.add(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                result.add(rows.toDto(i));
+            }
+        });
+
+        assertThat(count).isEqualTo(22);
+        assertThat(batchSizes).containsExactly(10, 10, 2);
+        assertThat(result).containsExactlyElementsOf(expected);
+        assertThat(result).filteredOn(dto -> dto.getTeamId() == null).hasSize(4);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    public void repositoryMetrics() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+
+        memberRepository.search(new MemberSearchCondition());
+
+        Timer timer = meterRegistry.find("querydsl.repository.calls")
+                .tags("repository", "MemberRepositoryImpl", "method", "search")
+                .timer();
+        DistributionSummary rows = meterRegistry.find("querydsl.repository.rows")
+                .tags("repository", "MemberRepositoryImpl", "method", "search")
+                .summary();
+        DistributionSummary statements = meterRegistry.find("querydsl.repository.statements")
+                .tags("repository", "MemberRepositoryImpl", "method", "search")
+                .summary();
+        assertThat(timer.count()).isGreaterThanOrEqualTo(1);
+        assertThat(rows.max()).isGreaterThanOrEqualTo(2);
+        assertThat(statements.max()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void searchPlansUseIndex() {
+        //부분 일치 LIKE 만 있는 조합은 인덱스를 못 타므로 풀 스캔으로 잡혀야 하고, 앞부분 일치와 memberIds 를 포함한 나머지 조합은 모두 인덱스를 타야 한다.
+        Map<String, String> fullScans = searchPlanVerifier.verify();
+        assertThat(fullScans).containsOnlyKeys("usernameContains");
+    }
+}
@@ -0,0 +1,51 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.metrics.StatementLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.*;
+
+//repository 호출 하나가 statement 4개를 넘으면 StatementLimitExceededException
+@SpringBootTest(properties = "querydsl.metrics.statement-limit=4")
+@Transactional
+class MemberStatementLimitTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Test
+    public void statementLimit() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 4; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+        em.flush();
+        em.clear();
+
+        //id 구간마다 update 가 나가므로 한 번의 호출이 statement-limit 을 넘는다.
+        assertThatThrownBy(() -> memberRepository.bulkIncrementAge(new MemberSearchCondition(), 1))
+                .isInstanceOf(StatementLimitExceededException.class)
+                .hasMessageContaining("bulkIncrementAge");
+    }
+
+    @Test
+    public void withinLimit() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.flush();
+        em.clear();
+
+        assertThat(memberRepository.bulkIncrementAge(new MemberSearchCondition())).isEqualTo(1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/*
+ * 대소문자를 구분하지 않는 collation(MySQL *_ci)을 H2 IGNORECASE 로 흉내 낸다.
+ * max-ids=1 이라 두 건 이상 맞으면 LIKE 로, 한 건이면 색인으로 조회하므로 두 경로와 읽기 모델을 같이 비교한다.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ignorecase;MODE=MySQL;IGNORECASE=TRUE",
+        "querydsl.search.username-ignore-case=true",
+        "querydsl.search.username-index.max-ids=1",
+        "querydsl.search.read-model.enabled=true",
+})
+class MemberUsernameIgnoreCaseTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+    @Autowired
+    MemberReadModel readModel;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.persist(new Member("Alice", 10));
+            em.persist(new Member("alicia", 20));
+            em.persist(new Member("MALICE", 30));
+            em.persist(new Member("bob", 40));
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member").executeUpdate());
+        usernameIndex.rebuild();
+        readModel.rebuild();
+    }
+
+    @Test
+    public void indexLikeAndReadModelAgree() {
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("ALI");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("LiC");
+        MemberSearchCondition single = new MemberSearchCondition();
+        single.setUsernamePrefix("MAL");
+
+        //여러 건이면 LIKE, 한 건이면 색인
+        assertThat(usernameIndex.findIds("ALI", null)).isNull();
+        assertThat(usernameIndex.findIds("MAL", null)).hasSize(1);
+
+        assertThat(memberRepository.search(prefix)).extracting("username")
+                .containsExactlyInAnyOrder("Alice", "alicia");
+        assertThat(memberRepository.search(contains)).extracting("username")
+                .containsExactlyInAnyOrder("Alice", "alicia", "MALICE");
+        assertThat(memberRepository.search(single)).extracting("username")
+                .containsExactly("MALICE");
+        for (MemberSearchCondition condition : List.of(prefix, contains, single)) {
+            List<MemberTeamDto> expected = memberRepository.search(condition);
+            assertThat(readModel.search(condition)).containsExactlyElementsOf(expected);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+//색인은 커밋된 변경만 반영하므로 테스트 데이터를 커밋하고 끝나면 지운다.
+@SpringBootTest
+class MemberUsernameIndexTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    EntityManagerFactory emf;
+
+    @BeforeEach
+    public void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            em.persist(new Member("alice", 10, teamA));
+            em.persist(new Member("alicia", 20, teamA));
+            em.persist(new Member("malice", 30, teamA));
+            em.persist(new Member("bob", 40, teamA));
+            em.persist(new Member("100%_bob", 50, teamA));
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+        usernameIndex.rebuild();
+    }
+
+    @Test
+    public void usernamePrefixAndContains() {
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("ali");
+        MemberSearchCondition upperPrefix = new MemberSearchCondition();
+        upperPrefix.setUsernamePrefix("ALI");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("lic");
+        MemberSearchCondition shortContains = new MemberSearchCondition();
+        shortContains.setUsernameContains("ob");
+        MemberSearchCondition wildcard = new MemberSearchCondition();
+        wildcard.setUsernameContains("%_");
+
+        assertThat(memberRepository.search(prefix)).extracting("username")
+                .containsExactlyInAnyOrder("alice", "alicia");
+        //테스트 DB 는 대소문자를 구분하므로 색인도 구분한다. (querydsl.search.username-ignore-case=false)
+        assertThat(memberRepository.search(upperPrefix)).isEmpty();
+        assertThat(memberRepository.search(contains)).extracting("username")
+                .containsExactlyInAnyOrder("alice", "alicia", "malice");
+        assertThat(memberRepository.search(shortContains)).extracting("username")
+                .containsExactlyInAnyOrder("bob", "100%_bob");
+        assertThat(memberRepository.search(wildcard)).extracting("username")
+                .containsExactly("100%_bob");
+    }
+
+    @Test
+    public void usernameContainsWithOtherConditions() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameContains("alic");
+        condition.setAgeGoe(20);
+
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+        List<MemberTeamDto> after = memberRepository.searchAfter(condition, null, 10);
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(after).extracting("username").containsExactly("alicia", "malice");
+    }
+
+    @Test
+    public void startupReconcilesExistingIndex() {
+        //이전 실행에서 남은, DB 에 없는 회원
+        usernameIndex.indexAfterCommit(Collections.singletonMap(-1L, "ghost"));
+        assertThat(usernameIndex.findIds("gho", null)).containsExactly(-1L);
+
+        usernameIndex.rebuildOnStartup();
+
+        assertThat(usernameIndex.findIds("gho", null)).isEmpty();
+        assertThat(usernameIndex.findIds("ali", null)).hasSize(2);
+    }
+
+    @Test
+    public void likeUntilFirstRebuild(@TempDir Path dir) throws Exception {
+        //이벤트 리스너는 빈 쪽에 이미 등록돼 있으므로 open 없이 쓴다.
+        MemberUsernameIndex notBuilt = new MemberUsernameIndex(emf, true, dir.toString(), 100, false);
+        try {
+            //처음 만들기 전에는 빈 결과 대신 null 을 돌려줘서 LIKE 로 조회하게 한다.
+            assertThat(notBuilt.findIds("ali", null)).isNull();
+            notBuilt.rebuild();
+            assertThat(notBuilt.findIds("ali", null)).hasSize(2);
+            //다시 만들면 새 디렉터리로 바꾸고 이전 것은 지운다.
+            notBuilt.rebuild();
+            assertThat(notBuilt.findIds("ali", null)).hasSize(2);
+            assertThat(dir.toFile().list()).hasSize(1);
+        } finally {
+            notBuilt.close();
+        }
+        assertThat(dir.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void changesDuringRebuildAreKept() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String username = "concurrent" + i;
+                tasks.add(executor.submit(() -> new TransactionTemplate(transactionManager)
+                        .executeWithoutResult(status -> em.persist(new Member(username, 60, null)))));
+                if (i % 5 == 0) {
+                    tasks.add(executor.submit(usernameIndex::rebuild));
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(usernameIndex.findIds("concurrent", null)).hasSize(20);
+    }
+
+    @Test
+    public void bulkRenameAndDeleteUpdateIndex() {
+        MemberSearchCondition bob = new MemberSearchCondition();
+        bob.setUsername("bob");
+        memberRepository.bulkRename(bob, "robert");
+
+        MemberSearchCondition malice = new MemberSearchCondition();
+        malice.setUsername("malice");
+        memberRepository.bulkDelete(malice);
+
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("bert");
+        MemberSearchCondition lic = new MemberSearchCondition();
+        lic.setUsernameContains("lic");
+
+        assertThat(memberRepository.search(contains)).extracting("username").containsExactly("robert");
+        assertThat(memberRepository.search(lic)).extracting("username")
+                .containsExactlyInAnyOrder("alice", "alicia");
+    }
+}
@@ -0,0 +1,69 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.entity.Member;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static org.assertj.core.api.Assertions.*;
+
+//색인을 끄면 LIKE 로 조회한다. username 컬럼을 그대로 비교하므로 대소문자는 컬럼 collation 을 따른다.
+@SpringBootTest(properties = "querydsl.search.username-index.enabled=false")
+@Transactional
+class MemberUsernameLikeTest {
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+    @Autowired
+    MemberSearchQueryCache queryCache;
+
+    @Test
+    public void likeFallbackFollowsCollation() {
+        em.persist(new Member("Alice", 10));
+        em.persist(new Member("Alicia", 20));
+        em.persist(new Member("MALICE", 30));
+        em.persist(new Member("100%_Bob", 40));
+
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("Ali");
+        MemberSearchCondition upperPrefix = new MemberSearchCondition();
+        upperPrefix.setUsernamePrefix("ALI");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("lic");
+        MemberSearchCondition wildcard = new MemberSearchCondition();
+        wildcard.setUsernameContains("%_B");
+
+        //테스트 DB(H2)는 대소문자를 구분한다.
+        assertThat(memberRepository.search(prefix)).extracting("username")
+                .containsExactlyInAnyOrder("Alice", "Alicia");
+        assertThat(memberRepository.search(upperPrefix)).isEmpty();
+        assertThat(memberRepository.search(contains)).extracting("username")
+                .containsExactlyInAnyOrder("Alice", "Alicia");
+        assertThat(memberRepository.search(wildcard)).extracting("username")
+                .containsExactly("100%_Bob");
+        assertThat(new JPAQueryFactory(em).selectFrom(member)
+                .where(usernameIndex.predicate("Ali", "cia"))
+                .fetch()).extracting("username")
+                .containsExactly("Alicia");
+    }
+
+    @Test
+    public void prefixLikeKeepsColumnBare() {
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("Ali");
+
+        //lower(username) 처럼 컬럼을 감싸면 idx_member_username 으로 범위 검색을 못 한다.
+        assertThat(queryCache.jpql(em, prefix))
+                .contains("member1.username like ?")
+                .doesNotContainIgnoringCase("lower(");
+    }
+}
@@ -0,0 +1,174 @@
+package com.changddao.querydsl.repository;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.dto.QMemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.changddao.querydsl.entity.QMember.member;
+import static com.changddao.querydsl.entity.QTeam.team;
+import static org.assertj.core.api.Assertions.*;
+
+//쿼리 캐시 적중 여부는 Hibernate 통계로 확인한다.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TeamCacheTest {
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    StatementCounter statementCounter;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    Long teamAId;
+
+    @BeforeEach
+    public void before() {
+        //2차 캐시는 커밋된 데이터만 올라가므로 롤백하지 않고 커밋한다.
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.persist(new Member("member1", 10, teamA));
+            em.persist(new Member("member2", 20, teamA));
+            em.persist(new Member("member3", 40, teamB));
+            teamAId = teamA.getId();
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void teamEntityCache() {
+        EntityManager em1 = emf.createEntityManager();
+        em1.find(Team.class, teamAId);
+        em1.close();
+
+        statementCounter.reset();
+        EntityManager em2 = emf.createEntityManager();
+        Team findTeam = em2.find(Team.class, teamAId);
+        em2.close();
+
+        assertThat(findTeam.getName()).isEqualTo("teamA");
+        assertThat(statementCounter.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void teamNameQueryCache() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        SessionFactory sessionFactory = emf.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictQueryRegion(TeamRepository.TEAM_IDS_REGION);
+        sessionFactory.getCache().evictEntityData(Team.class);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        //기준: 팀을 조인해서 한 번에 읽는 쿼리
+        statementCounter.reset();
+        List<MemberTeamDto> baseline = new JPAQueryFactory(em)
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq("teamA"))
+                .orderBy(member.id.asc())
+                .fetch();
+        int baselineStatements = statementCounter.get();
+
+        //처음에는 팀 이름 -> id 와 팀 엔티티를 DB 에서 읽는다.
+        memberRepository.search(condition);
+        CacheRegionStatistics teamIds = statistics.getQueryRegionStatistics(TeamRepository.TEAM_IDS_REGION);
+        assertThat(teamIds.getMissCount()).isEqualTo(1);
+        assertThat(teamIds.getHitCount()).isEqualTo(0);
+
+        statementCounter.reset();
+        List<MemberTeamDto> result = memberRepository.search(condition);
+
+        //캐시가 차면 팀 id 조회와 팀 이름이 캐시에서 나오므로 조인 없는 회원 조회 하나만 남는다.
+        assertThat(statistics.getQueryRegionStatistics(TeamRepository.TEAM_IDS_REGION).getHitCount()).isEqualTo(1);
+        assertThat(statementCounter.get()).isEqualTo(baselineStatements);
+        assertThat(statementCounter.sqls()).noneMatch(sql -> sql.toLowerCase().contains(" join "));
+        assertThat(result).containsExactlyElementsOf(baseline);
+        assertThat(result).extracting("teamName").containsOnly("teamA");
+    }
+
+    @Test
+    public void teamMembersCacheEvictedBySetTeam() {
+        EntityManager em1 = emf.createEntityManager();
+        assertThat(em1.find(Team.class, teamAId).getMembers()).hasSize(2);
+        em1.close();
+
+        //연관관계 편의 메서드 없이 Member 쪽만 바꿔도 캐시된 Team.members 가 남지 않아야 한다.
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Member member1 = em.createQuery("select m from Member m where m.username = 'member1'", Member.class)
+                    .getSingleResult();
+            member1.setTeam(em.createQuery("select t from Team t where t.name = 'teamB'", Team.class)
+                    .getSingleResult());
+        });
+
+        EntityManager em2 = emf.createEntityManager();
+        assertThat(em2.find(Team.class, teamAId).getMembers()).extracting("username")
+                .containsExactly("member2");
+        em2.close();
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfig {
+        @Bean
+        StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+    }
+
+    static class StatementCounter extends SimpleJdbcEventListener {
+        private final List<String> sqls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+            sqls.add(statementInformation.getSql());
+        }
+
+        void reset() {
+            sqls.clear();
+        }
+
+        int get() {
+            return sqls.size();
+        }
+
+        List<String> sqls() {
+            return sqls;
+        }
+    }
+}
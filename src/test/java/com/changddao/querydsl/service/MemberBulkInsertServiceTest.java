@@ -0,0 +1,110 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.repository.MemberRepository;
+import com.changddao.querydsl.repository.MemberUsernameIndex;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.*;
+
+/*
+ * chunk 마다 커밋되는지 보려면 테스트 트랜잭션에 묶이면 안 되므로 @Transactional 없이 커밋하고 끝나면 지운다.
+ * 커밋 횟수는 Hibernate 통계로 센다.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MemberBulkInsertServiceTest {
+    @Autowired
+    MemberBulkInsertService memberBulkInsertService;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    Statistics statistics;
+
+    @BeforeEach
+    public void before() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+        usernameIndex.rebuild();
+    }
+
+    @Test
+    public void insertMembers() {
+        long before = memberRepository.count();
+        statistics.clear();
+
+        MemberBulkInsertService.Report report = memberBulkInsertService.insertMembers(1234, 500, false);
+
+        assertReport(report, 1234);
+        //팀 1번 + chunk 3번(500, 500, 234) 각각 커밋한다.
+        assertThat(statistics.getSuccessfulTransactionCount()).isEqualTo(4);
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2 + 1234);
+        assertThat(memberRepository.count() - before).isEqualTo(1234);
+        assertThat(memberRepository.findByUsername("member1233")).hasSize(1);
+    }
+
+    @Test
+    public void insertMembersMultiRow() {
+        long before = memberRepository.count();
+        statistics.clear();
+
+        MemberBulkInsertService.Report report = memberBulkInsertService.insertMembers(1234, 500, true);
+
+        assertReport(report, 1234);
+        assertThat(statistics.getSuccessfulTransactionCount()).isEqualTo(4);
+        //회원은 JDBC 로 넣으므로 JPA 로 넣은 엔티티는 팀 두 개뿐이다.
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2);
+        assertThat(memberRepository.count() - before).isEqualTo(1234);
+        assertThat(memberRepository.findByUsername("member1233")).hasSize(1);
+    }
+
+    @Test
+    public void chunksAlternateTeams() {
+        memberBulkInsertService.insertMembers(10, 3, false);
+
+        //chunk 마다 em.clear() 를 하므로 FK 로만 연결한 회원이 members 컬렉션에서 빠지지 않아야 한다.
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (Team team : em.createQuery("select t from Team t", Team.class).getResultList()) {
+                assertThat(team.getMembers()).hasSize(5);
+            }
+        });
+        //팀 1번 + chunk 4번(3, 3, 3, 1) + 위의 조회 1번
+        assertThat(statistics.getSuccessfulTransactionCount()).isEqualTo(1 + 4 + 1);
+    }
+
+    private void assertReport(MemberBulkInsertService.Report report, int rows) {
+        assertThat(report.getRows()).isEqualTo(rows);
+        assertThat(report.getElapsedMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(report.getRowsPerSecond()).isGreaterThan(0);
+        if (report.getElapsedMillis() > 0) {
+            assertThat(report.getRowsPerSecond())
+                    .isLessThanOrEqualTo(rows * 1000d / report.getElapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.changddao.querydsl.service;
+
+import com.changddao.querydsl.dto.MemberSearchCondition;
+import com.changddao.querydsl.dto.MemberTeamDto;
+import com.changddao.querydsl.entity.Member;
+import com.changddao.querydsl.entity.Team;
+import com.changddao.querydsl.repository.EstimatedPage;
+import com.changddao.querydsl.repository.MemberRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+//조회가 다른 스레드에서 실행되므로 테스트 데이터를 커밋하고 끝나면 지운다.
+@SpringBootTest(properties = {
+        "querydsl.search.parallel-count=true",
+        "querydsl.search.count-timeout-ms=200"
+})
+class MemberSearchServiceTest {
+    @Autowired
+    MemberSearchService memberSearchService;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    ThreadPoolTaskExecutor queryExecutor;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("member" + i, i * 10, i % 2 == 0 ? teamA : teamB));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void searchAsync() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        List<MemberTeamDto> result = memberSearchService.search(condition).join();
+
+        assertThat(result).extracting("username")
+                .containsExactly("member0", "member2", "member4", "member6", "member8");
+    }
+
+    @Test
+    public void searchPageAsync() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        Page<MemberTeamDto> result = memberSearchService.searchPage(condition, PageRequest.of(1, 3)).join();
+
+        assertThat(result.getTotalElements()).isEqualTo(8);
+        assertThat(result.getTotalPages()).isEqualTo(3);
+        assertThat(result.getContent()).extracting("username")
+                .containsExactly("member5", "member6", "member7");
+    }
+
+    @Test
+    public void searchPageCountRejected() {
+        //내용 조회만 받고 count 는 거절하는 executor
+        AtomicInteger submitted = new AtomicInteger();
+        Executor oneTask = task -> {
+            if (submitted.incrementAndGet() > 1) {
+                throw new RejectedExecutionException("full");
+            }
+            queryExecutor.execute(task);
+        };
+        MemberSearchService service = new MemberSearchService(memberRepository, oneTask, false, 0);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        Page<MemberTeamDto> result = service.searchPage(condition, PageRequest.of(1, 3)).join();
+
+        assertThat(submitted.get()).isEqualTo(2);
+        assertThat(result.getTotalElements()).isEqualTo(8);
+        assertThat(result.getContent()).extracting("username")
+                .containsExactly("member5", "member6", "member7");
+    }
+
+    @Test
+    public void searchPageCoalesced() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        Page<MemberTeamDto> result = memberSearchService.searchPageComplex(condition, PageRequest.of(0, 3), true);
+
+        assertThat(result.getTotalElements()).isEqualTo(5);
+        assertThat(result.getContent()).extracting("username")
+                .containsExactly("member1", "member3", "member5");
+    }
+
+    @Test
+    public void searchPageComplexParallelCount() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        EstimatedPage<MemberTeamDto> result =
+                (EstimatedPage<MemberTeamDto>) memberRepository.searchPageComplex(condition, PageRequest.of(0, 3));
+
+        assertThat(result.isTotalExact()).isTrue();
+        assertThat(result.getTotalElements()).isEqualTo(8);
+        assertThat(result.getContent()).extracting("username")
+                .containsExactly("member2", "member3", "member4");
+    }
+
+    @Test
+    public void searchPageComplexCountTimeout() throws Exception {
+        //queryExecutor 스레드를 모두 붙잡아서 count 가 제 시간에 실행되지 못하게 한다.
+        CountDownLatch release = blockQueryExecutor();
+        long statements;
+        try {
+            EstimatedPage<MemberTeamDto> result = (EstimatedPage<MemberTeamDto>)
+                    memberRepository.searchPageComplex(new MemberSearchCondition(), PageRequest.of(0, 3));
+
+            assertThat(result.isTotalExact()).isFalse();
+            assertThat(result.getTotalElements()).isEqualTo(6);
+            assertThat(result.getContent()).hasSize(3);
+            statements = meterRegistry.get("querydsl.sql").timer().count();
+        } finally {
+            release.countDown();
+        }
+
+        //큐에 남은 count 는 취소됐으므로 스레드가 풀려도 실행되지 않는다.
+        awaitQueryExecutorIdle();
+        assertThat(meterRegistry.get("querydsl.sql").timer().count()).isEqualTo(statements);
+    }
+
+    @Test
+    public void searchPageComplexCountTimeoutUsesEstimate() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        //제 시간에 끝난 count 는 추정치로 남는다.
+        assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 3)).getTotalElements())
+                .isEqualTo(8);
+
+        CountDownLatch release = blockQueryExecutor();
+        try {
+            EstimatedPage<MemberTeamDto> result = (EstimatedPage<MemberTeamDto>)
+                    memberRepository.searchPageComplex(condition, PageRequest.of(0, 3));
+
+            assertThat(result.isTotalExact()).isFalse();
+            assertThat(result.getTotalElements()).isEqualTo(8);
+        } finally {
+            release.countDown();
+        }
+        awaitQueryExecutorIdle();
+    }
+
+    private CountDownLatch blockQueryExecutor() {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < queryExecutor.getMaxPoolSize(); i++) {
+            queryExecutor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        return release;
+    }
+
+    private void awaitQueryExecutorIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queryExecutor.getActiveCount() > 0
+                || !queryExecutor.getThreadPoolExecutor().getQueue().isEmpty()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.changddao.querydsl.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(5000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("teamA", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "result";
+                })));
+            }
+            //나머지 7개가 leader 를 기다리기 시작한 뒤에 leader 를 끝낸다.
+            while (singleFlight.getCoalescedCount() < 7) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            }
+            assertThat(loads.get()).isEqualTo(1);
+            assertThat(singleFlight.getLeaderCount()).isEqualTo(1);
+
+            //끝난 호출은 남지 않으므로 다음 호출은 다시 실행한다.
+            singleFlight.execute("teamA", () -> "again" + loads.incrementAndGet());
+            assertThat(loads.get()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitIsBounded() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(50);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("teamA", () -> {
+                await(release);
+                return "leader";
+            }));
+            while (singleFlight.getLeaderCount() < 1) {
+                Thread.sleep(5);
+            }
+
+            //leader 가 끝나지 않으면 기다리다가 직접 조회한다.
+            assertThat(singleFlight.execute("teamA", () -> "own")).isEqualTo("own");
+            assertThat(singleFlight.getTimeoutCount()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void leaderFailureIsShared() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(5000);
+
+        assertThatThrownBy(() -> singleFlight.execute("teamA", () -> {
+            throw new IllegalArgumentException("boom");
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThat(singleFlight.execute("teamA", () -> "ok")).isEqualTo("ok");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}